@@ -0,0 +1,70 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+Standard workloads run through the tree-walker and the bytecode VM.
+
+run* executes a program that was parsed and resolved in setup, endToEnd
+includes scanning, parsing and resolving on every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"fib", "loops", "concat", "calls"})
+    String workload;
+
+    private String source;
+    private Program program;
+    private VmFunction script;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() {
+        source = Workloads.named(workload);
+        program = Workloads.prepare(source);
+        script = new Compiler(Workloads.REPORTER).compile(program.statements);
+        out = System.out;
+        System.setOut(Workloads.DISCARD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+        if (Workloads.REPORTER.hadRuntimeError()) throw new IllegalStateException("Workload failed at runtime.");
+    }
+
+    @Benchmark
+    public void runInterpreter() {
+        new Interpreter(Workloads.REPORTER).interpret(program.statements, program.globalNames);
+    }
+
+    @Benchmark
+    public void runVm() {
+        new VM(Workloads.REPORTER).interpret(script, program.globalNames);
+    }
+
+    @Benchmark
+    public void endToEnd() {
+        Program prepared = Workloads.prepare(source);
+        new Interpreter(Workloads.REPORTER).interpret(prepared.statements, prepared.globalNames);
+    }
+}
@@ -0,0 +1,50 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Tokens are scanned once in setup, only parse() is measured
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"deep", "synthetic"})
+    String shape;
+
+    private List<Token> tokens;
+
+    @Setup
+    public void setUp() {
+        String source;
+        if (shape.equals("deep")) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                builder.append(Workloads.deepExpression(200));
+            }
+            source = builder.toString();
+        } else {
+            source = Workloads.synthetic(10000);
+        }
+        tokens = new Scanner(source, Workloads.REPORTER).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, Workloads.REPORTER).parse();
+    }
+}
@@ -0,0 +1,53 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+    @Param({"1000", "100000"})
+    int lines;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Workloads.synthetic(lines);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source, Workloads.REPORTER).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanCompact() {
+        return new Scanner(source, Workloads.REPORTER).scanCompact();
+    }
+
+    @Benchmark
+    public int scanStreaming() {
+        Scanner scanner = new Scanner(new StringReader(source), Workloads.REPORTER);
+        int count = 0;
+        while (scanner.nextToken().type != TokenType.EOF) count++;
+        return count;
+    }
+}
@@ -0,0 +1,110 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// Lox sources shared by the benchmarks
+final class Workloads {
+    private Workloads() {
+    }
+
+    static final String FIB = String.join("\n",
+            "fun fib(n) {",
+            "    if (n < 2) return n;",
+            "    return fib(n - 1) + fib(n - 2);",
+            "}",
+            "print fib(20);");
+
+    static final String LOOPS = String.join("\n",
+            "var sum = 0;",
+            "for (var i = 0; i < 300; i = i + 1) {",
+            "    for (var j = 0; j < 300; j = j + 1) {",
+            "        sum = sum + i * j - (i - j) / 2;",
+            "    }",
+            "}",
+            "print sum;");
+
+    static final String CONCAT = String.join("\n",
+            "var text = \"\";",
+            "for (var i = 0; i < 2000; i = i + 1) {",
+            "    text = text + \"ab\" + i;",
+            "}",
+            "print text == \"\";");
+
+    static final String CALLS = String.join("\n",
+            "fun add(a, b) { return a + b; }",
+            "fun identity(x) { return x; }",
+            "var total = 0;",
+            "for (var i = 0; i < 100000; i = i + 1) {",
+            "    total = add(total, identity(1));",
+            "}",
+            "print total;");
+
+    static String named(String workload) {
+        switch (workload) {
+            case "fib":
+                return FIB;
+            case "loops":
+                return LOOPS;
+            case "concat":
+                return CONCAT;
+            case "calls":
+                return CALLS;
+        }
+        throw new IllegalArgumentException("Unknown workload " + workload);
+    }
+
+    // Many small declarations and statements, the shape of generated scripts
+    static String synthetic(int lines) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (i % 4) {
+                case 0:
+                    source.append("var value").append(i).append(" = ").append(i).append(".5; // number\n");
+                    break;
+                case 1:
+                    source.append("fun f").append(i).append("(a, b) { return a * b + \"text\"; }\n");
+                    break;
+                case 2:
+                    source.append("if (value").append(i - 2).append(" >= 10 and true) print value")
+                            .append(i - 2).append("; else print nil;\n");
+                    break;
+                default:
+                    source.append("/* block */ while (false) { break; }\n");
+                    break;
+            }
+        }
+        return source.toString();
+    }
+
+    // One expression statement nested depth levels deep, alternating operators and groupings
+    static String deepExpression(int depth) {
+        StringBuilder source = new StringBuilder();
+        String[] operators = {" + ", " * ", " - ", " / ", " == ", " < ", " and ", " or "};
+        for (int i = 0; i < depth; i++) {
+            source.append("(x").append(i).append(operators[i % operators.length]);
+        }
+        source.append("1");
+        for (int i = 0; i < depth; i++) {
+            source.append(")");
+        }
+        return "print " + source + ";\n";
+    }
+
+    // Workloads are known to be valid, errors only matter as a failed check
+    static final ErrorReporter REPORTER = new ErrorReporter(System.err);
+
+    // Parsed and resolved, ready for an Interpreter
+    static Program prepare(String source) {
+        int errors = REPORTER.errors;
+        List<Stmt> statements = new Parser(new Scanner(source, REPORTER).scanTokens(), REPORTER).parse();
+        Resolver resolver = new Resolver(REPORTER);
+        resolver.resolve(statements);
+        if (REPORTER.errors != errors) throw new IllegalStateException("Workload does not compile.");
+        return new Program(statements, resolver.globalNames());
+    }
+
+    // print writes to System.out, benchmarks swap it for this while they run
+    static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+}
@@ -0,0 +1,559 @@
+package com.craftinginterpreters.lox;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Binary form of resolved Stmt/Expr trees, used by ScriptCache.
+
+Each node is a tag byte followed by its fields in declaration order, then the
+fields the Resolver filled in (depth, slot, global, frameSize, tailCall), so a
+loaded tree can run without going through the Resolver again. The program's
+global name table follows the statements, global numbers index it.
+Binary.node is a runtime cache and starts over.
+A null node is tag 0.
+
+Both directions recurse over the tree, a tree nested deeper than the Java
+stack allows fails with an IOException like any other unusable entry.
+ */
+class AstSerializer {
+    private static final byte NULL = 0;
+
+    private static final byte ASSIGN = 1;
+    private static final byte BINARY = 2;
+    private static final byte CALL = 3;
+    private static final byte COMMA_COLLECTION = 4;
+    private static final byte GROUPING = 5;
+    private static final byte LITERAL = 6;
+    private static final byte LOGICAL = 7;
+    private static final byte UNARY = 8;
+    private static final byte VARIABLE = 9;
+    private static final byte TERNARY = 10;
+
+    private static final byte BLOCK = 1;
+    private static final byte BREAK = 2;
+    private static final byte EXPRESSION = 3;
+    private static final byte FUNCTION = 4;
+    private static final byte IF = 5;
+    private static final byte PRINT = 6;
+    private static final byte RETURN = 7;
+    private static final byte VAR = 8;
+    private static final byte WHILE = 9;
+
+    // Tags for literal values
+    private static final byte VALUE_NIL = 0;
+    private static final byte VALUE_TRUE = 1;
+    private static final byte VALUE_FALSE = 2;
+    private static final byte VALUE_NUMBER = 3;
+    private static final byte VALUE_STRING = 4;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    static void write(DataOutputStream out, Program program) throws IOException {
+        try {
+            Writer writer = new Writer(out);
+            writer.writeStatements(program.statements);
+            writer.writeInt(program.globalNames.length);
+            for (String name : program.globalNames) {
+                writer.writeString(name);
+            }
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        } catch (StackOverflowError error) {
+            throw new IOException("Tree nested too deeply to cache.");
+        }
+    }
+
+    // Throws IOException on anything that does not decode to a program
+    static Program read(DataInputStream in) throws IOException {
+        try {
+            return new Reader(in).readProgram();
+        } catch (StackOverflowError error) {
+            throw new IOException("Cached tree nested too deeply.");
+        }
+    }
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        // Visitors can't throw checked exceptions, write() unwraps these again
+        private void writeByte(int value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        private void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        private void writeDouble(double value) {
+            try {
+                out.writeDouble(value);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        // writeUTF stops at 64K, string literals may not
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(VALUE_NIL);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Double) {
+                writeByte(VALUE_NUMBER);
+                writeDouble((Double) value);
+            } else {
+                writeByte(VALUE_STRING);
+                writeString((String) value);
+            }
+        }
+
+        private void writeToken(Token token) {
+            writeByte(token.type.ordinal());
+            writeString(token.lexeme);
+            writeValue(token.literal);
+            writeInt(token.line);
+        }
+
+        private void writeTokens(List<Token> tokens) {
+            writeInt(tokens.size());
+            for (Token token : tokens) {
+                writeToken(token);
+            }
+        }
+
+        private void writeStatements(List<Stmt> statements) {
+            writeInt(statements.size());
+            for (Stmt statement : statements) {
+                writeStmt(statement);
+            }
+        }
+
+        private void writeExprs(List<Expr> exprs) {
+            writeInt(exprs.size());
+            for (Expr expr : exprs) {
+                writeExpr(expr);
+            }
+        }
+
+        private void writeStmt(Stmt stmt) {
+            if (stmt == null) {
+                writeByte(NULL);
+            } else {
+                stmt.accept(this);
+            }
+        }
+
+        private void writeExpr(Expr expr) {
+            if (expr == null) {
+                writeByte(NULL);
+            } else {
+                expr.accept(this);
+            }
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            writeByte(BLOCK);
+            writeInt(stmt.line);
+            writeStatements(stmt.statements);
+            writeInt(stmt.frameSize);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            writeByte(BREAK);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            writeByte(EXPRESSION);
+            writeExpr(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            writeByte(FUNCTION);
+            writeToken(stmt.name);
+            writeTokens(stmt.params);
+            writeStatements(stmt.body);
+            writeInt(stmt.slot);
+            writeInt(stmt.global);
+            writeInt(stmt.frameSize);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            writeByte(IF);
+            writeExpr(stmt.condition);
+            writeStmt(stmt.thenBranch);
+            writeStmt(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            writeByte(PRINT);
+            writeExpr(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            writeByte(RETURN);
+            writeToken(stmt.keyword);
+            writeExpr(stmt.value);
+            writeByte(stmt.tailCall ? 1 : 0);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            writeByte(VAR);
+            writeToken(stmt.name);
+            writeExpr(stmt.initializer);
+            writeInt(stmt.slot);
+            writeInt(stmt.global);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            writeByte(WHILE);
+            writeToken(stmt.keyword);
+            writeExpr(stmt.condition);
+            writeStmt(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            writeByte(ASSIGN);
+            writeToken(expr.name);
+            writeExpr(expr.value);
+            writeInt(expr.depth);
+            writeInt(expr.slot);
+            writeInt(expr.global);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            writeByte(BINARY);
+            writeExpr(expr.left);
+            writeToken(expr.operator);
+            writeExpr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            writeByte(CALL);
+            writeExpr(expr.callee);
+            writeToken(expr.paren);
+            writeExprs(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitCommaCollectionExpr(Expr.CommaCollection expr) {
+            writeByte(COMMA_COLLECTION);
+            writeExpr(expr.left);
+            writeToken(expr.operator);
+            writeExpr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            writeByte(GROUPING);
+            writeExpr(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            writeByte(LITERAL);
+            writeValue(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            writeByte(LOGICAL);
+            writeExpr(expr.left);
+            writeToken(expr.operator);
+            writeExpr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            writeByte(UNARY);
+            writeToken(expr.operator);
+            writeExpr(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            writeByte(VARIABLE);
+            writeToken(expr.name);
+            writeInt(expr.depth);
+            writeInt(expr.slot);
+            writeInt(expr.global);
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            writeByte(TERNARY);
+            writeExpr(expr.condition);
+            writeExpr(expr.trueLeg);
+            writeExpr(expr.falseLeg);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        // Lexemes repeat a lot, share one String per spelling
+        private final Map<String, String> lexemes = new HashMap<>();
+        // One more than the highest global number read, the name table must cover it
+        private int globals = 0;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Program readProgram() throws IOException {
+            List<Stmt> statements = readStatements();
+            String[] names = new String[readCount()];
+            if (names.length < globals) throw new IOException("Global number out of range in cached tree.");
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString();
+            }
+            return new Program(statements, names);
+        }
+
+        // -1 for anything that is not a global
+        private int readGlobal() throws IOException {
+            int global = in.readInt();
+            if (global < -1) throw new IOException("Negative global number in cached tree.");
+            globals = Math.max(globals, global + 1);
+            return global;
+        }
+
+        private int readCount() throws IOException {
+            int count = in.readInt();
+            if (count < 0) throw new IOException("Negative count in cached tree.");
+            return count;
+        }
+
+        private String readString() throws IOException {
+            int length = readCount();
+            // A corrupt length must not allocate more than the entry holds
+            if (length > in.available()) throw new IOException("Truncated string in cached tree.");
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private Object readValue() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case VALUE_NIL:
+                    return null;
+                case VALUE_TRUE:
+                    return true;
+                case VALUE_FALSE:
+                    return false;
+                case VALUE_NUMBER:
+                    return in.readDouble();
+                case VALUE_STRING:
+                    return readString();
+            }
+            throw new IOException("Unknown value tag " + tag + " in cached tree.");
+        }
+
+        private Token readToken() throws IOException {
+            int type = in.readUnsignedByte();
+            if (type >= TYPES.length) throw new IOException("Unknown token type in cached tree.");
+            String lexeme = readString();
+            String shared = lexemes.putIfAbsent(lexeme, lexeme);
+            if (shared != null) lexeme = shared;
+            Object literal = readValue();
+            return new Token(TYPES[type], lexeme, literal, in.readInt());
+        }
+
+        private List<Token> readTokens() throws IOException {
+            int count = readCount();
+            List<Token> tokens = new ArrayList<>(Math.min(count, 256));
+            for (int i = 0; i < count; i++) {
+                tokens.add(readToken());
+            }
+            return tokens;
+        }
+
+        List<Stmt> readStatements() throws IOException {
+            int count = readCount();
+            List<Stmt> statements = new ArrayList<>(Math.min(count, 256));
+            for (int i = 0; i < count; i++) {
+                statements.add(readStmt());
+            }
+            return statements;
+        }
+
+        private List<Expr> readExprs() throws IOException {
+            int count = readCount();
+            List<Expr> exprs = new ArrayList<>(Math.min(count, 256));
+            for (int i = 0; i < count; i++) {
+                exprs.add(readExpr());
+            }
+            return exprs;
+        }
+
+        private Stmt readStmt() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case BLOCK: {
+                    int line = in.readInt();
+                    Stmt.Block stmt = new Stmt.Block(line, readStatements());
+                    stmt.frameSize = in.readInt();
+                    return stmt;
+                }
+                case BREAK:
+                    return new Stmt.Break();
+                case EXPRESSION:
+                    return new Stmt.Expression(readExpr());
+                case FUNCTION: {
+                    Token name = readToken();
+                    List<Token> params = readTokens();
+                    Stmt.Function stmt = new Stmt.Function(name, params, readStatements());
+                    stmt.slot = in.readInt();
+                    stmt.global = readGlobal();
+                    stmt.frameSize = in.readInt();
+                    return stmt;
+                }
+                case IF: {
+                    Expr condition = readExpr();
+                    Stmt thenBranch = readStmt();
+                    return new Stmt.If(condition, thenBranch, readStmt());
+                }
+                case PRINT:
+                    return new Stmt.Print(readExpr());
+                case RETURN: {
+                    Token keyword = readToken();
+                    Stmt.Return stmt = new Stmt.Return(keyword, readExpr());
+                    stmt.tailCall = in.readBoolean();
+                    return stmt;
+                }
+                case VAR: {
+                    Token name = readToken();
+                    Stmt.Var stmt = new Stmt.Var(name, readExpr());
+                    stmt.slot = in.readInt();
+                    stmt.global = readGlobal();
+                    return stmt;
+                }
+                case WHILE: {
+                    Token keyword = readToken();
+                    Expr condition = readExpr();
+                    return new Stmt.While(keyword, condition, readStmt());
+                }
+            }
+            throw new IOException("Unknown statement tag " + tag + " in cached tree.");
+        }
+
+        private Expr readExpr() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case ASSIGN: {
+                    Token name = readToken();
+                    Expr.Assign expr = new Expr.Assign(name, readExpr());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    expr.global = readGlobal();
+                    return expr;
+                }
+                case BINARY: {
+                    Expr left = readExpr();
+                    Token operator = readToken();
+                    return new Expr.Binary(left, operator, readExpr());
+                }
+                case CALL: {
+                    Expr callee = readExpr();
+                    Token paren = readToken();
+                    return new Expr.Call(callee, paren, readExprs());
+                }
+                case COMMA_COLLECTION: {
+                    Expr left = readExpr();
+                    Token operator = readToken();
+                    return new Expr.CommaCollection(left, operator, readExpr());
+                }
+                case GROUPING:
+                    return new Expr.Grouping(readExpr());
+                case LITERAL:
+                    return new Expr.Literal(readValue());
+                case LOGICAL: {
+                    Expr left = readExpr();
+                    Token operator = readToken();
+                    return new Expr.Logical(left, operator, readExpr());
+                }
+                case UNARY: {
+                    Token operator = readToken();
+                    return new Expr.Unary(operator, readExpr());
+                }
+                case VARIABLE: {
+                    Expr.Variable expr = new Expr.Variable(readToken());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    expr.global = readGlobal();
+                    return expr;
+                }
+                case TERNARY: {
+                    Expr condition = readExpr();
+                    Expr trueLeg = readExpr();
+                    return new Expr.Ternary(condition, trueLeg, readExpr());
+                }
+            }
+            throw new IOException("Unknown expression tag " + tag + " in cached tree.");
+        }
+    }
+}
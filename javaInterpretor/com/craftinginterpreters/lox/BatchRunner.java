@@ -0,0 +1,206 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+--batch: runs many scripts in one JVM, each as its own job.
+
+The batch is a directory, every .lox file under it, or a manifest listing one
+script per line (relative to the manifest, blank lines and # comments
+skipped). Each script is compiled and run on its own LoxEngine, so scripts
+share nothing, and its stdout and stderr are captured. Scripts run on a
+fixed pool of --threads threads; Lox scripts are CPU bound, so a pool the
+size of the machine keeps every core busy without oversubscribing it.
+
+Captured output is written in batch order as scripts finish, each under a
+"== script ==" header, stdout to stdout and stderr to stderr. The summary of
+exit status and wall time per script goes to stderr, with each script's peak
+metered memory under --memory or --max-memory.
+
+A script that makes the interpreter throw only fails itself. A
+VirtualMachineError other than StackOverflowError, such as running out of
+heap, ends the whole batch: every script shares the heap, so the scripts
+after it would fail for a reason that is not theirs.
+ */
+class BatchRunner {
+    private static final int NO_INPUT = 66; // script could not be read
+    private static final int INTERNAL_ERROR = 70; // the interpreter itself failed on the script
+
+    // Outcome of one script
+    private static class Result {
+        final Path script;
+        final int status;
+        final long nanos;
+        final long peakMemory; // -1 when not metered
+        final byte[] out;
+        final byte[] err;
+
+        Result(Path script, int status, long nanos, long peakMemory, byte[] out, byte[] err) {
+            this.script = script;
+            this.status = status;
+            this.nanos = nanos;
+            this.peakMemory = peakMemory;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    private final int threads;
+    private final boolean useVm;
+    private final boolean optimize;
+    private final long maxSteps;
+    private final long timeout;
+    private final long maxMemory; // -1 when not metered
+
+    BatchRunner(int threads, boolean useVm, boolean optimize, long maxSteps, long timeout, long maxMemory) {
+        this.threads = threads;
+        this.useVm = useVm;
+        this.optimize = optimize;
+        this.maxSteps = maxSteps;
+        this.timeout = timeout;
+        this.maxMemory = maxMemory;
+    }
+
+    // Runs the batch and returns the highest exit status of any script
+    int run(Path batch) throws IOException {
+        List<Path> scripts = scripts(batch);
+        long start = System.nanoTime();
+
+        List<Result> results = new ArrayList<>();
+        // Same deep stack as the main script thread, see Lox.STACK_BYTES
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                job -> new Thread(null, job, "lox-batch", Lox.STACK_BYTES));
+        try {
+            List<Future<Result>> running = new ArrayList<>();
+            for (Path script : scripts) {
+                running.add(pool.submit(() -> runScript(script)));
+            }
+            for (int i = 0; i < scripts.size(); i++) {
+                Result result = await(running.get(i), scripts.get(i));
+                write(result);
+                results.add(result);
+            }
+        } catch (VirtualMachineError error) {
+            pool.shutdownNow();
+            summarize(results, System.nanoTime() - start);
+            System.err.println("== Batch aborted: " + error + " while running " + scripts.get(results.size())
+                    + ", " + (scripts.size() - results.size() - 1) + " scripts after it not reported ==");
+            return INTERNAL_ERROR;
+        } finally {
+            pool.shutdown();
+        }
+
+        return summarize(results, System.nanoTime() - start);
+    }
+
+    private static List<Path> scripts(Path batch) throws IOException {
+        if (Files.isDirectory(batch)) {
+            try (Stream<Path> files = Files.walk(batch)) {
+                return files.filter(file -> file.toString().endsWith(".lox") && Files.isRegularFile(file))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        Path base = batch.toAbsolutePath().getParent();
+        List<Path> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(batch)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            scripts.add(base.resolve(line));
+        }
+        return scripts;
+    }
+
+    private Result runScript(Path script) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream errStream = new PrintStream(err);
+        LoxEngine engine = new LoxEngine(new PrintStream(out), errStream).useVm(useVm).optimize(optimize)
+                .limit(maxSteps, timeout);
+        if (maxMemory != -1) engine.limitMemory(maxMemory);
+
+        long start = System.nanoTime();
+        int status;
+        try {
+            Program program = Lox.compile(engine, script);
+            if (program != null) engine.run(program);
+            status = Lox.exitStatus(engine);
+        } catch (IOException error) {
+            errStream.println("Could not read " + script + ".");
+            status = NO_INPUT;
+        } catch (RuntimeException | StackOverflowError error) {
+            // Only this script fails, the rest of the batch keeps going
+            errStream.println("Internal error: " + error);
+            status = INTERNAL_ERROR;
+        }
+        long nanos = System.nanoTime() - start;
+
+        errStream.flush();
+        return new Result(script, status, nanos, engine.peakMemory(), out.toByteArray(), err.toByteArray());
+    }
+
+    private static Result await(Future<Result> future, Path script) {
+        try {
+            return future.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted.", error);
+        } catch (ExecutionException error) {
+            // Fatal to the batch, see run()
+            if (error.getCause() instanceof VirtualMachineError) throw (VirtualMachineError) error.getCause();
+            // Any other Error fails only the script that threw it
+            byte[] message = ("Internal error: " + error.getCause() + System.lineSeparator()).getBytes();
+            return new Result(script, INTERNAL_ERROR, 0, -1, new byte[0], message);
+        }
+    }
+
+    private static void write(Result result) {
+        String header = "== " + result.script + " ==";
+        System.out.println(header);
+        System.out.write(result.out, 0, result.out.length);
+        System.out.flush();
+        if (result.err.length > 0) {
+            System.err.println(header);
+            System.err.write(result.err, 0, result.err.length);
+            System.err.flush();
+        }
+    }
+
+    private int summarize(List<Result> results, long wallNanos) {
+        int failed = 0;
+        int status = 0;
+        for (Result result : results) {
+            if (result.status != 0) failed++;
+            status = Math.max(status, result.status);
+        }
+
+        System.err.println(String.format("== Batch: %d scripts on %d threads, %d ok, %d failed, %.3f ms wall ==",
+                results.size(), threads, results.size() - failed, failed, wallNanos / 1e6));
+        if (maxMemory == -1) {
+            System.err.println(String.format("%10s %12s  %s", "status", "ms", "script"));
+            for (Result result : results) {
+                System.err.println(String.format("%10d %12.3f  %s", result.status, result.nanos / 1e6, result.script));
+            }
+        } else {
+            System.err.println(String.format("%10s %12s %14s  %s", "status", "ms", "peak bytes", "script"));
+            for (Result result : results) {
+                System.err.println(String.format("%10d %12.3f %14d  %s", result.status, result.nanos / 1e6,
+                        result.peakMemory, result.script));
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,244 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+Self-specializing implementation of an Expr.Binary operator.
+
+Every Binary starts out UNINITIALIZED. The first evaluation looks at the
+operand types and rewrites expr.node to a node specialized for them, e.g. a
+PLUS that sees two doubles becomes DOUBLE_ADD. A specialized node that later
+sees other types rewrites itself to GENERIC, which is the full operator
+switch in Interpreter.binary(), so a node only ever moves towards GENERIC.
+
+Nodes hold no state and belong to no engine, so a tree shared between
+engines stays valid. Binary.node is a plain field and the race on it is
+benign: every value it can hold is a stateless singleton that fits the
+operands it was chosen for, so an engine reading a stale node at worst
+takes one more rewrite. Only the first specialization is a compare-and-set,
+so engines racing on one tree never move a node away from GENERIC once it
+got there.
+ */
+abstract class BinaryNode {
+    private static final VarHandle NODE;
+
+    static {
+        try {
+            NODE = MethodHandles.lookup().findVarHandle(Expr.Binary.class, "node", BinaryNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static final BinaryNode UNINITIALIZED = new Uninitialized();
+    static final BinaryNode GENERIC = new Generic();
+    private static final BinaryNode DOUBLE_ADD = new DoubleAdd();
+    private static final BinaryNode DOUBLE_SUBTRACT = new DoubleSubtract();
+    private static final BinaryNode DOUBLE_MULTIPLY = new DoubleMultiply();
+    private static final BinaryNode DOUBLE_DIVIDE = new DoubleDivide();
+    private static final BinaryNode DOUBLE_GREATER = new DoubleGreater();
+    private static final BinaryNode DOUBLE_GREATER_EQUAL = new DoubleGreaterEqual();
+    private static final BinaryNode DOUBLE_LESS = new DoubleLess();
+    private static final BinaryNode DOUBLE_LESS_EQUAL = new DoubleLessEqual();
+    private static final BinaryNode STRING_CONCAT = new StringConcat();
+
+    // Lets the Interpreter evaluate the operands of double nodes without boxing them
+    static final int OTHER = 0;
+    static final int DOUBLE_ARITHMETIC = 1;
+    static final int DOUBLE_COMPARISON = 2;
+
+    final int kind;
+
+    BinaryNode(int kind) {
+        this.kind = kind;
+    }
+
+    abstract Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right);
+
+    // Type miss, drop to the generic node for good
+    static Object deoptimize(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+        expr.node = GENERIC;
+        return GENERIC.execute(interpreter, expr, left, right);
+    }
+
+    private static class Uninitialized extends BinaryNode {
+        Uninitialized() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            BinaryNode node = specialize(expr.operator.type, left, right);
+            // Losing the race leaves another engine's choice in place, node still fits these operands
+            NODE.compareAndSet(expr, UNINITIALIZED, node);
+            return node.execute(interpreter, expr, left, right);
+        }
+
+        private static BinaryNode specialize(TokenType operator, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                switch (operator) {
+                    case PLUS:
+                        return DOUBLE_ADD;
+                    case MINUS:
+                        return DOUBLE_SUBTRACT;
+                    case STAR:
+                        return DOUBLE_MULTIPLY;
+                    case SLASH:
+                        return DOUBLE_DIVIDE;
+                    case GREATER:
+                        return DOUBLE_GREATER;
+                    case GREATER_EQUAL:
+                        return DOUBLE_GREATER_EQUAL;
+                    case LESS:
+                        return DOUBLE_LESS;
+                    case LESS_EQUAL:
+                        return DOUBLE_LESS_EQUAL;
+                }
+            }
+            if (operator == TokenType.PLUS && LoxString.isString(left) && LoxString.isString(right)) {
+                return STRING_CONCAT;
+            }
+            return GENERIC;
+        }
+    }
+
+    private static class Generic extends BinaryNode {
+        Generic() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            return interpreter.binary(expr, left, right);
+        }
+    }
+
+    private static class DoubleAdd extends BinaryNode {
+        DoubleAdd() {
+            super(DOUBLE_ARITHMETIC);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class StringConcat extends BinaryNode {
+        StringConcat() {
+            super(OTHER);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (LoxString.isString(left) && LoxString.isString(right)) {
+                return interpreter.concat(expr.operator, left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleSubtract extends BinaryNode {
+        DoubleSubtract() {
+            super(DOUBLE_ARITHMETIC);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left - (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleMultiply extends BinaryNode {
+        DoubleMultiply() {
+            super(DOUBLE_ARITHMETIC);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left * (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    // Division by zero stays specialized but is handed to the generic switch for NaN or the error
+    private static class DoubleDivide extends BinaryNode {
+        DoubleDivide() {
+            super(DOUBLE_ARITHMETIC);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                if ((double) right != 0.0) return (double) left / (double) right;
+                return interpreter.binary(expr, left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleGreater extends BinaryNode {
+        DoubleGreater() {
+            super(DOUBLE_COMPARISON);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left > (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleGreaterEqual extends BinaryNode {
+        DoubleGreaterEqual() {
+            super(DOUBLE_COMPARISON);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left >= (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleLess extends BinaryNode {
+        DoubleLess() {
+            super(DOUBLE_COMPARISON);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left < (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+
+    private static class DoubleLessEqual extends BinaryNode {
+        DoubleLessEqual() {
+            super(DOUBLE_COMPARISON);
+        }
+
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left <= (double) right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+/*
+Step budget and wall-clock deadline for each run, set with --max-steps and
+--timeout (LoxEngine.limit()). A run that goes over either one stops with a
+RuntimeError, so a runaway 'while (true)' cannot hold a thread forever.
+
+A step is one loop iteration or one function call, in the Interpreter and the
+VM alike. On the hot path a step only decrements remaining and compares it
+with zero; every CHECK_INTERVAL steps checkpoint() adds them up and reads
+the clock. The deadline is therefore only seen at a checkpoint, a run can
+overshoot it by the time CHECK_INTERVAL steps take.
+
+Interpreter.budget and VM.budget are null without limits, the cost when
+disabled is a null check per step.
+ */
+final class Budget {
+    private static final long CHECK_INTERVAL = 4096;
+
+    private final long maxSteps; // Long.MAX_VALUE for no limit
+    private final long timeoutNanos; // 0 for no deadline
+    long remaining = 0; // steps left until the next checkpoint
+    private long interval = 0; // steps since the last checkpoint when remaining hits 0
+    private long used = 0;
+    private long deadline = 0;
+
+    // 0 turns a limit off
+    Budget(long maxSteps, long timeoutMillis) {
+        this.maxSteps = maxSteps == 0 ? Long.MAX_VALUE : maxSteps;
+        this.timeoutNanos = timeoutMillis * 1_000_000;
+    }
+
+    // Every run starts with the whole budget
+    void start() {
+        used = 0;
+        deadline = System.nanoTime() + timeoutNanos;
+        schedule();
+    }
+
+    // Called when remaining reaches 0: null if the run may go on, otherwise why it has to stop
+    String checkpoint() {
+        used += interval;
+        if (used > maxSteps) return "Step budget of " + maxSteps + " exceeded.";
+        if (timeoutNanos != 0 && System.nanoTime() - deadline > 0) {
+            return "Time limit of " + timeoutNanos / 1_000_000 + " ms exceeded.";
+        }
+        schedule();
+        return null;
+    }
+
+    // The last interval ends one step past maxSteps, so that step is the one that fails
+    private void schedule() {
+        long left = maxSteps - used;
+        interval = left < CHECK_INTERVAL ? left + 1 : CHECK_INTERVAL;
+        remaining = interval;
+    }
+}
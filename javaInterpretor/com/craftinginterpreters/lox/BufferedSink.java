@@ -0,0 +1,100 @@
+package com.craftinginterpreters.lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/*
+Sink for scripts, prints collect in a buffer that is written to a channel in
+large chunks instead of one locked, flushed System.out.println per line.
+
+Values are formatted straight into the text buffer, then encoded through a
+direct ByteBuffer into the channel. The buffer is written out when it holds
+capacity chars, when a print comes more than the flush interval after the
+last write, and on flush(). The interval is only checked when printing, a
+script that goes quiet keeps its last lines until it prints again or ends.
+
+Like PrintStream, a failed write is not reported to the script, output is
+dropped from then on.
+ */
+class BufferedSink implements OutputSink {
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final int capacity;
+    private final long flushIntervalNanos;
+    private final StringBuilder text;
+    private final ByteBuffer bytes;
+    private long lastFlush = System.nanoTime();
+    private boolean failed = false;
+
+    BufferedSink(WritableByteChannel channel, Charset charset, int capacity, long flushIntervalMillis) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.capacity = capacity;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000;
+        this.text = new StringBuilder(capacity + 64);
+        this.bytes = ByteBuffer.allocateDirect(Math.max(capacity, 1024));
+    }
+
+    // Standard output, written through its file descriptor instead of System.out
+    static BufferedSink stdout(int capacity, long flushIntervalMillis) {
+        return new BufferedSink(new FileOutputStream(FileDescriptor.out).getChannel(),
+                Charset.defaultCharset(), capacity, flushIntervalMillis);
+    }
+
+    @Override
+    public void print(Object value) {
+        if (value instanceof Double || LoxString.isString(value)) {
+            LoxString.append(text, value);
+        } else {
+            text.append(Interpreter.stringify(value));
+        }
+        text.append(LINE_SEPARATOR);
+
+        if (text.length() >= capacity || System.nanoTime() - lastFlush >= flushIntervalNanos) flush();
+    }
+
+    @Override
+    public void flush() {
+        if (text.length() > 0 && !failed) {
+            try {
+                CharBuffer chars = CharBuffer.wrap(text);
+                encoder.reset();
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, bytes, true);
+                    write();
+                } while (result.isOverflow());
+                while (encoder.flush(bytes).isOverflow()) {
+                    write();
+                }
+                write();
+            } catch (IOException error) {
+                failed = true;
+            }
+        }
+        text.setLength(0);
+        lastFlush = System.nanoTime();
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
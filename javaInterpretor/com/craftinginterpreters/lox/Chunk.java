@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compiled bytecode with its constant pool and a source line for every byte
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+    final List<Object> constants = new ArrayList<>();
+
+    void write(byte b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = b;
+        lines[count] = line;
+        count++;
+    }
+
+    void writeShort(int value, int line) {
+        write((byte) ((value >> 8) & 0xff), line);
+        write((byte) (value & 0xff), line);
+    }
+
+    // Returns index of the constant, -1 once the u16 operand range is full
+    int addConstant(Object value) {
+        if (constants.size() > 0xffff) return -1;
+        constants.add(value);
+        return constants.size() - 1;
+    }
+}
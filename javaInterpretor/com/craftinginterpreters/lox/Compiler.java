@@ -0,0 +1,610 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Lowers resolved Stmt/Expr trees into a Chunk for the VM.
+
+Locals live on the VM's value stack. A call's window starts at its first
+argument and holds function.slots locals, temporaries go above them. The
+Resolver's (depth, slot) pairs become a fixed slot in that window here: a
+block takes the slots right after the ones its enclosing scopes use, so
+entering a block costs nothing and leaving one only clears its slots
+(CLOSE_LOCALS). Variables of enclosing functions are reached through
+upvalues as in clox, CLOSURE lists where each one is captured from.
+
+Globals are addressed by the number the Resolver gave their name in the
+program's GlobalNames, which each VM links to a slot of its own Environment.
+
+Every instruction costs the VM a dispatch, so common shapes get fused ones:
+arithmetic and comparisons on locals and number literals read them inline
+(the *_OPERANDS instructions), if and while compare and jump in one
+instruction or pop their condition as they jump, and an assignment
+statement to a local stores straight into its slot.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Bookkeeping for the innermost loop so 'break' knows where to go
+    private static class Loop {
+        final Loop enclosing;
+        final int slotsInUse;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(Loop enclosing, int slotsInUse) {
+            this.enclosing = enclosing;
+            this.slotsInUse = slotsInUse;
+        }
+    }
+
+    // Function being compiled, the script is the outermost one
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final Chunk chunk = new Chunk();
+        // First slot of each open Resolver scope in this function, outermost first
+        final List<Integer> scopeBases = new ArrayList<>();
+        // Where each upvalue is captured from: (1 << 16 | slot) for a local of the
+        // enclosing function, an upvalue index of the enclosing function otherwise
+        final List<Integer> upvalues = new ArrayList<>();
+        int slotsInUse = 0;
+        int slots = 0;
+        int height = 0; // temporaries on the stack after the code emitted so far
+        int maxHeight = 0;
+
+        FunctionState(FunctionState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private static final int LOCAL_UPVALUE = 1 << 16;
+
+    private final ErrorReporter reporter;
+    private FunctionState function;
+    private Loop loop = null;
+    private int line = 1;
+
+    Compiler(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    VmFunction compile(List<Stmt> statements) {
+        function = new FunctionState(null);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+        return finish(null, 0);
+    }
+
+    private VmFunction finish(String name, int arity) {
+        return new VmFunction(name, arity, function.upvalues.size(), function.slots,
+                function.slots + function.maxHeight, function.chunk);
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private Chunk chunk() {
+        return function.chunk;
+    }
+
+    private void emit(byte op) {
+        chunk().write(op, line);
+        adjustHeight(OpCode.stackEffect(op));
+    }
+
+    private void emit(byte op, int operand) {
+        emit(op);
+        chunk().writeShort(operand, line);
+    }
+
+    // Temporaries pushed (positive) or popped (negative) by code just emitted
+    private void adjustHeight(int effect) {
+        function.height += effect;
+        if (function.height > function.maxHeight) function.maxHeight = function.height;
+    }
+
+    private void emitConstant(Object value) {
+        emit(OpCode.CONSTANT, makeConstant(value));
+    }
+
+    private int makeConstant(Object value) {
+        int index = chunk().addConstant(value);
+        if (index == -1) {
+            reporter.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private int globalConstant(Token name, int global) {
+        return makeConstant(new VM.Global(name, global));
+    }
+
+    // Emits a jump with a placeholder offset, returns where to patch it
+    private int emitJump(byte op) {
+        emit(op, 0xffff);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = chunk().count - offset - 2;
+        if (jump > 0xffff) {
+            reporter.error(line, "Too much code to jump over.");
+        }
+        chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    // Jump taken when condition is false, leaves nothing on the stack; returns where to patch it
+    private int emitConditionJump(Expr condition) {
+        if (condition instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) condition;
+            byte jump = conditionJumpOpCode(binary.operator.type);
+            if (jump != -1 && isOperand(binary.left, binary.operator) && isOperand(binary.right, binary.operator)) {
+                int left = operand(binary.left);
+                int right = operand(binary.right);
+                line = binary.operator.line;
+                emit(jump, left);
+                chunk().writeShort(right, line);
+                chunk().writeShort(0xffff, line);
+                return chunk().count - 2;
+            }
+        }
+        compile(condition);
+        return emitJump(OpCode.POP_JUMP_IF_FALSE);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP);
+        int offset = chunk().count - loopStart + 2;
+        if (offset > 0xffff) reporter.error(line, "Loop body too large.");
+        chunk().writeShort(offset, line);
+    }
+
+    private void emitCloseLocals(int first, int count) {
+        emit(OpCode.CLOSE_LOCALS, first);
+        chunk().writeShort(count, line);
+    }
+
+    // Opens a Resolver scope of size slots right after the ones in use
+    private void beginScope(int size) {
+        function.scopeBases.add(function.slotsInUse);
+        function.slotsInUse += size;
+        if (function.slotsInUse > function.slots) function.slots = function.slotsInUse;
+    }
+
+    // Closes the innermost scope, returns its first slot
+    private int endScope() {
+        int first = function.scopeBases.remove(function.scopeBases.size() - 1);
+        function.slotsInUse = first;
+        return first;
+    }
+
+    // Slot in state's window of the variable at (depth, slot), -1 if an enclosing function owns it
+    private static int localSlot(FunctionState state, int depth, int slot) {
+        int scope = state.scopeBases.size() - 1 - depth;
+        if (scope < 0) return -1;
+        return state.scopeBases.get(scope) + slot;
+    }
+
+    // Upvalue index in state for the variable at (depth, slot) of an enclosing function
+    private int resolveUpvalue(FunctionState state, int depth, int slot) {
+        FunctionState enclosing = state.enclosing;
+        int enclosingDepth = depth - state.scopeBases.size();
+        int local = localSlot(enclosing, enclosingDepth, slot);
+        if (local != -1) return addUpvalue(state, LOCAL_UPVALUE | local);
+        return addUpvalue(state, resolveUpvalue(enclosing, enclosingDepth, slot));
+    }
+
+    private int addUpvalue(FunctionState state, int source) {
+        int index = state.upvalues.indexOf(source);
+        if (index != -1) return index;
+        if (state.upvalues.size() == 0xffff) {
+            reporter.error(line, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(source);
+        return state.upvalues.size() - 1;
+    }
+
+    private void defineVariable(Token name, int slot, int global) {
+        if (slot != -1) {
+            emit(OpCode.DEFINE_LOCAL, localSlot(function, 0, slot));
+        } else {
+            emit(OpCode.DEFINE_GLOBAL, globalConstant(name, global));
+        }
+    }
+
+    private void getVariable(int depth, int slot, int global, Token name) {
+        if (depth == -1) {
+            emit(OpCode.GET_GLOBAL, globalConstant(name, global));
+            return;
+        }
+        int local = localSlot(function, depth, slot);
+        if (local != -1) {
+            emit(OpCode.GET_LOCAL, local);
+        } else {
+            emit(OpCode.GET_UPVALUE, resolveUpvalue(function, depth, slot));
+        }
+    }
+
+    private void setVariable(int depth, int slot, int global, Token name) {
+        if (depth == -1) {
+            emit(OpCode.SET_GLOBAL, globalConstant(name, global));
+            return;
+        }
+        int local = localSlot(function, depth, slot);
+        if (local != -1) {
+            emit(OpCode.SET_LOCAL, local);
+        } else {
+            emit(OpCode.SET_UPVALUE, resolveUpvalue(function, depth, slot));
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope(stmt.frameSize);
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        int first = endScope();
+        if (stmt.frameSize > 0) emitCloseLocals(first, stmt.frameSize);
+        return null;
+    }
+
+    // Clears the slots of blocks opened inside the loop body before leaving it
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (function.slotsInUse > loop.slotsInUse) {
+            emitCloseLocals(loop.slotsInUse, function.slotsInUse - loop.slotsInUse);
+        }
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign) stmt.expression;
+            int local = assign.depth == -1 ? -1 : localSlot(function, assign.depth, assign.slot);
+            if (local != -1) {
+                // Nothing uses the value, DEFINE_LOCAL pops it into the slot
+                compile(assign.value);
+                line = assign.name.line;
+                emit(OpCode.DEFINE_LOCAL, local);
+                return null;
+            }
+        }
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    // Body goes into a fresh FunctionState, loop tracking restarts inside it
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        FunctionState enclosing = function;
+        Loop enclosingLoop = loop;
+
+        function = new FunctionState(enclosing);
+        loop = null;
+        // Parameters are the first slots of the function's scope, where CALL leaves the arguments
+        beginScope(stmt.frameSize);
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+        VmFunction compiled = finish(stmt.name.lexeme, stmt.params.size());
+        List<Integer> upvalues = function.upvalues;
+
+        function = enclosing;
+        loop = enclosingLoop;
+
+        line = stmt.name.line;
+        emit(OpCode.CLOSURE, makeConstant(compiled));
+        for (int source : upvalues) {
+            chunk().write((byte) (source >= LOCAL_UPVALUE ? 1 : 0), line);
+            chunk().writeShort(source & 0xffff, line);
+        }
+        defineVariable(stmt.name, stmt.slot, stmt.global);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int elseJump = emitConditionJump(stmt.condition);
+        compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            patchJump(elseJump);
+            return null;
+        }
+        int endJump = emitJump(OpCode.JUMP);
+
+        patchJump(elseJump);
+        compile(stmt.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    // RETURN drops the whole window, so open blocks need no CLOSE_LOCALS here
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.UNINITIALIZED);
+        }
+        defineVariable(stmt.name, stmt.slot, stmt.global);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk().count;
+        int exitJump = emitConditionJump(stmt.condition);
+
+        loop = new Loop(loop, function.slotsInUse);
+        compile(stmt.body);
+        // Errors on the back edge, like an exceeded Budget, report the loop's line
+        line = stmt.keyword.line;
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        for (int breakJump : loop.breakJumps) {
+            patchJump(breakJump);
+        }
+        loop = loop.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        setVariable(expr.depth, expr.slot, expr.global, expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        byte fused = operandsOpCode(expr.operator.type);
+        if (fused != -1 && isOperand(expr.left, expr.operator) && isOperand(expr.right, expr.operator)) {
+            int left = operand(expr.left);
+            int right = operand(expr.right);
+            line = expr.operator.line;
+            emit(fused, left);
+            chunk().writeShort(right, line);
+            return null;
+        }
+
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case GREATER:
+                emit(OpCode.GREATER);
+                break;
+            case GREATER_EQUAL:
+                emit(OpCode.GREATER_EQUAL);
+                break;
+            case LESS:
+                emit(OpCode.LESS);
+                break;
+            case LESS_EQUAL:
+                emit(OpCode.LESS_EQUAL);
+                break;
+            case MINUS:
+                emit(OpCode.SUBTRACT);
+                break;
+            case PLUS:
+                emit(OpCode.ADD);
+                break;
+            case SLASH:
+                emit(OpCode.DIVIDE);
+                break;
+            case STAR:
+                emit(OpCode.MULTIPLY);
+                break;
+            case BANG_EQUAL:
+                emit(OpCode.NOT_EQUAL);
+                break;
+            case EQUAL_EQUAL:
+                emit(OpCode.EQUAL);
+                break;
+        }
+        return null;
+    }
+
+    private static byte operandsOpCode(TokenType operator) {
+        switch (operator) {
+            case GREATER:
+                return OpCode.GREATER_OPERANDS;
+            case GREATER_EQUAL:
+                return OpCode.GREATER_EQUAL_OPERANDS;
+            case LESS:
+                return OpCode.LESS_OPERANDS;
+            case LESS_EQUAL:
+                return OpCode.LESS_EQUAL_OPERANDS;
+            case MINUS:
+                return OpCode.SUBTRACT_OPERANDS;
+            case PLUS:
+                return OpCode.ADD_OPERANDS;
+            case SLASH:
+                return OpCode.DIVIDE_OPERANDS;
+            case STAR:
+                return OpCode.MULTIPLY_OPERANDS;
+            default:
+                return -1;
+        }
+    }
+
+    private static byte conditionJumpOpCode(TokenType operator) {
+        switch (operator) {
+            case GREATER:
+                return OpCode.JUMP_IF_NOT_GREATER;
+            case GREATER_EQUAL:
+                return OpCode.JUMP_IF_NOT_GREATER_EQUAL;
+            case LESS:
+                return OpCode.JUMP_IF_NOT_LESS;
+            case LESS_EQUAL:
+                return OpCode.JUMP_IF_NOT_LESS_EQUAL;
+            default:
+                return -1;
+        }
+    }
+
+    // True for a number literal, or a local of this function named on the operator's
+    // line so that reading it uninitialized still reports the same line
+    private boolean isOperand(Expr expr, Token operator) {
+        if (expr instanceof Expr.Literal) {
+            return ((Expr.Literal) expr).value instanceof Double
+                    && chunk().constants.size() < OpCode.OPERAND_CONSTANT - 1; // room for both operands
+        }
+        if (!(expr instanceof Expr.Variable)) return false;
+        Expr.Variable variable = (Expr.Variable) expr;
+        if (variable.depth == -1 || variable.name.line != operator.line) return false;
+        int local = localSlot(function, variable.depth, variable.slot);
+        return local != -1 && local < OpCode.OPERAND_CONSTANT;
+    }
+
+    // Operand of an *_OPERANDS instruction, expr passed isOperand()
+    private int operand(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return OpCode.OPERAND_CONSTANT | makeConstant(((Expr.Literal) expr).value);
+        }
+        Expr.Variable variable = (Expr.Variable) expr;
+        return localSlot(function, variable.depth, variable.slot);
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        line = expr.paren.line;
+        emit(OpCode.CALL);
+        chunk().write((byte) expr.arguments.size(), line);
+        // The callee and its arguments become the result
+        adjustHeight(-expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitCommaCollectionExpr(Expr.CommaCollection expr) {
+        compile(expr.left);
+        emit(OpCode.POP);
+        compile(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL);
+        } else if (expr.value == Boolean.TRUE) {
+            emit(OpCode.TRUE);
+        } else if (expr.value == Boolean.FALSE) {
+            emit(OpCode.FALSE);
+        } else {
+            emitConstant(expr.value);
+        }
+        return null;
+    }
+
+    // Left operand stays on the stack as the result when it short circuits
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case BANG:
+                emit(OpCode.NOT);
+                break;
+            case MINUS:
+                emit(OpCode.NEGATE);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        getVariable(expr.depth, expr.slot, expr.global, expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.condition);
+        int falseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(expr.trueLeg);
+        int endJump = emitJump(OpCode.JUMP);
+
+        patchJump(falseJump);
+        // Where the false leg starts the condition is on the stack instead of the true leg's value
+        emit(OpCode.POP);
+        compile(expr.falseLeg);
+        patchJump(endJump);
+        return null;
+    }
+}
@@ -1,45 +1,75 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/*
+Global variables of one engine, stored in an indexed table.
+
+Programs number their globals on their own (see GlobalNames). Before a
+program runs, link() maps each of its numbers to this table's slot for the
+name, adding slots only for names the engine has not seen, so the table is
+as large as the globals of the programs this engine ran. Use sites then read
+a global with two array loads, and redefining one only overwrites its slot.
+Locals never live here. define() and assign() return the value they replace,
+for the MemoryMeter to release.
+ */
 public class Environment {
-    final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Slot value of a global that has not been defined yet
+    private static final Object UNDEFINED = new Object();
 
-    Environment() {
-        enclosing = null;
-    }
+    private final Map<String, Integer> slots = new HashMap<>();
+    private Object[] values = new Object[0];
 
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
+    // Slot of each of a program's global numbers
+    int[] link(String[] names) {
+        int[] linked = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            linked[i] = slotOf(names[i]);
+        }
+        return linked;
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+    private int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) return slot;
 
-        if (enclosing != null) return enclosing.get(name);
+        slot = slots.size();
+        slots.put(name, slot);
+        if (slot == values.length) {
+            values = Arrays.copyOf(values, Math.max(8, slot * 2));
+            Arrays.fill(values, slot, values.length, UNDEFINED);
+        }
+        return slot;
+    }
 
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    // Natives, which no program numbers. Null if the global was not defined
+    Object define(String name, Object value) {
+        return define(slotOf(name), value);
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+    // Null if the global was not defined
+    Object define(int slot, Object value) {
+        Object replaced = values[slot];
+        values[slot] = value;
+        return replaced == UNDEFINED ? null : replaced;
+    }
 
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    Object get(Token name, int slot) {
+        Object value = values[slot];
+        if (value == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
         }
-
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return value;
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    Object assign(Token name, int slot, Object value) {
+        Object replaced = values[slot];
+        if (replaced == UNDEFINED) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        values[slot] = value;
+        return replaced;
     }
 }
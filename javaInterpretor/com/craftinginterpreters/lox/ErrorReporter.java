@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/*
+Reports the errors of one LoxEngine and remembers that they happened.
+
+Every pass that can find an error (Scanner, Parser, Resolver, Compiler) and
+both back ends are handed the reporter of the engine they work for, so
+engines running side by side never see each other's errors. Counts rather
+than flags, so a caller can tell whether errors happened during one step.
+ */
+class ErrorReporter {
+    private final PrintStream err;
+    int errors = 0; // scan, parse, resolve and compile errors
+    int runtimeErrors = 0;
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    boolean hadError() {
+        return errors > 0;
+    }
+
+    boolean hadRuntimeError() {
+        return runtimeErrors > 0;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        runtimeErrors++;
+    }
+
+    private void report(int line, String where, String message) {
+        err.println("[line " + line + "] Error" + where + ": " + message);
+        errors++;
+    }
+}
@@ -28,6 +28,9 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    int depth = -1;
+    int slot;
+    int global = -1;
   }
   static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -44,6 +47,7 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    BinaryNode node = BinaryNode.UNINITIALIZED;
   }
   static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -142,6 +146,9 @@ abstract class Expr {
     }
 
     final Token name;
+    int depth = -1;
+    int slot;
+    int global = -1;
   }
   static class Ternary extends Expr {
     Ternary(Expr condition, Expr trueLeg, Expr falseLeg) {
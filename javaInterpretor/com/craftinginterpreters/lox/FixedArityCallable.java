@@ -0,0 +1,34 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/*
+Callable with direct entry points for 0 to 4 arguments.
+
+The Interpreter uses these whenever the callee implements this interface, so
+a call does not box its arguments into a List. Implementations override the
+entry points they can serve directly; the defaults go through the generic
+call(), and plain LoxCallables keep working through it unchanged.
+ */
+public interface FixedArityCallable extends LoxCallable {
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, Collections.emptyList());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Collections.singletonList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, Arrays.asList(a, b, c, d));
+    }
+}
@@ -0,0 +1,37 @@
+package com.craftinginterpreters.lox;
+
+/*
+Local scope backed by a fixed size array.
+
+Slot indices and frame sizes come from the Resolver, so a block or call costs
+one small array and variables are reached by index instead of by name.
+Globals are not stored in frames, they stay in Interpreter.globals.
+ */
+class Frame {
+    final Frame enclosing;
+    final Object[] values;
+    // True while a MemoryMeter counts this frame's values, from when its block or call
+    // was charged until it exits. Writes through a closure after that are not counted.
+    boolean counted = false;
+
+    Frame(Frame enclosing, int size) {
+        this.enclosing = enclosing;
+        this.values = new Object[size];
+    }
+
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).values[slot];
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).values[slot] = value;
+    }
+
+    Frame ancestor(int distance) {
+        Frame frame = this;
+        for (int i = 0; i < distance; i++) {
+            frame = frame.enclosing;
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Numbers for the global variable names of one program, handed out by its
+Resolver in order of first use, so they are dense from 0.
+
+The Resolver stores the number of a global's name in Expr.Variable.global,
+Expr.Assign.global, and Stmt.Var.global / Stmt.Function.global of top level
+declarations. The trees of a shared Program hold nothing that belongs to
+one engine: each engine links the program's names() to slots of its own
+Environment (see Environment.link()) before running it.
+ */
+final class GlobalNames {
+    private final Map<String, Integer> numbers = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    int numberOf(String name) {
+        Integer number = numbers.get(name);
+        if (number != null) return number;
+
+        number = names.size();
+        numbers.put(name, number);
+        names.add(name);
+        return number;
+    }
+
+    // Indexed by number
+    String[] names() {
+        return names.toArray(new String[0]);
+    }
+}
@@ -5,14 +5,47 @@ import java.util.List;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     final Environment globals = new Environment();
-    private Environment environment = globals;
-    private static Object uninitialized = new Object();
-
+    private final ErrorReporter reporter;
+    // Innermost local scope, null while running top level code
+    private Frame frame = null;
+    // Slot in globals of each global number of the running code's program, see Environment.link()
+    private int[] globalSlots = null;
+    // Value of 'var x;' until first assignment, shared with the VM
+    static final Object uninitialized = new Object();
+    // Marker for boxedResult, see evaluateDouble()
+    private static final Object UNBOXED = new Object();
+    private Object boxedResult = UNBOXED;
+
+    // Stackless and shared, a break carries no data so one instance serves every loop
     private static class BreakException extends RuntimeException {
+        BreakException() {
+            super(null, null, false, false);
+        }
     }
 
-    Interpreter() {
-        globals.define("clock", new LoxCallable() {
+    private static final BreakException BREAK = new BreakException();
+    static final String STACK_OVERFLOW = "Stack overflow.";
+    // Reused for every return executed by this interpreter, see Return
+    private final Return returnSignal = new Return();
+    // Set by --profile, null otherwise
+    Profiler profiler = null;
+    // Set by --stats, null otherwise
+    InterpreterStats stats = null;
+    // Set by --max-steps / --timeout, null otherwise
+    Budget budget = null;
+    // Set by --memory / --max-memory, null otherwise
+    MemoryMeter memory = null;
+    // Where print writes, Lox buffers it when running a file
+    OutputSink output = new PrintStreamSink(System.out);
+
+    Interpreter(ErrorReporter reporter) {
+        this.reporter = reporter;
+        defineNatives(globals);
+    }
+
+    // Native functions available to every script, used by the VM as well
+    static void defineNatives(Environment globals) {
+        globals.define("clock", new FixedArityCallable() {
             @Override
             public int arity() {
                 return 0;
@@ -20,6 +53,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -52,42 +90,215 @@ whileStmt → "while" "(" expression ")" statement ;
 forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")" statement;
 
     */
-    void interpret(List<Stmt> statements) {
+    void interpret(List<Stmt> statements, String[] globalNames) {
+        globalSlots = globals.link(globalNames);
+        if (budget != null) budget.start();
+        int temporaries = memory == null ? 0 : memory.temporaries();
+        long frames = memory == null ? 0 : memory.frames;
+        Stmt statement = null;
         try {
-            for (Stmt statement : statements) {
+            for (int i = 0; i < statements.size(); i++) {
+                statement = statements.get(i);
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            output.flush();
+            reporter.runtimeError(error);
+        } catch (StackOverflowError error) {
+            // Calls report their own overflow at the call site, this catches whatever recursed without one
+            output.flush();
+            Token where = new Token(TokenType.EOF, "", null, LineFinder.lineOf(statement));
+            reporter.runtimeError(new RuntimeError(where, STACK_OVERFLOW));
+        } finally {
+            output.flush();
+            // Nothing runs between here and the next interpret(), don't let the sampler count it
+            if (profiler != null) profiler.statement = null;
+            // A runtime error leaves the temporaries of every statement it interrupted, and a stack
+            // overflow can cut the release of a frame short
+            if (memory != null) {
+                memory.releaseTemporaries(temporaries, null);
+                memory.releaseFramesTo(frames);
+            }
         }
     }
 
     // Enables for recursive evaluating -> occurs until eval Literals
     // expr.accept(this) calls Expr to recursively call interpreter to interpret expression
     private void execute(Stmt stmt) {
+        if (profiler != null) profiler.statement = stmt;
+        if (stats != null) stats.evaluated(stmt);
+        if (memory == null) {
+            stmt.accept(this);
+        } else {
+            executeMetered(stmt);
+        }
+    }
+
+    // Strings the statement built and left in no variable are released once it completes.
+    // A statement ended by return, break or an error leaves them to whoever catches that.
+    private void executeMetered(Stmt stmt) {
+        int temporaries = memory.temporaries();
         stmt.accept(this);
+        memory.releaseTemporaries(temporaries, null);
     }
 
-    // Creating new environment to execute statements in a block scope
-    void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
+    // Runs a Lox function body in frame, which already holds the arguments.
+    // Trampoline: a tail call unwinds the body and the loop runs the callee in its place,
+    // so tail recursion uses constant Java stack and drops the caller's frame.
+    // Each Lox call costs a few Java frames, so execute() and the block setup are inlined here.
+    // When memory is metered, frame was charged and holds its arguments, and is released here.
+    Object callFunction(LoxFunction function, Frame frame) {
+        if (profiler != null) profiler.enter(function.declaration);
+        Frame previous = this.frame;
+        int[] previousGlobals = globalSlots;
+        int temporaries = memory == null ? 0 : memory.temporaries();
         try {
-            this.environment = environment;
-
-            for (Stmt statement : statements) {
-                execute(statement);
+            for (; ; ) {
+                // Every call and tail call hands over a frame it just created
+                if (stats != null) stats.frames++;
+                Frame called = frame;
+                this.frame = frame;
+                // Functions declared by an earlier program number its globals
+                globalSlots = function.globalSlots;
+                try {
+                    for (Stmt statement : function.declaration.body) {
+                        if (profiler != null) profiler.statement = statement;
+                        if (stats != null) stats.evaluated(statement);
+                        if (memory == null) {
+                            statement.accept(this);
+                        } else {
+                            executeMetered(statement);
+                        }
+                    }
+                    return null;
+                } catch (Return returnValue) {
+                    if (!returnValue.isTailCall()) {
+                        Object result = returnValue.take();
+                        if (memory != null) memory.releaseTemporaries(temporaries, result);
+                        return result;
+                    }
+
+                    function = returnValue.tailFunction();
+                    frame = returnValue.takeTailFrame();
+                    if (memory != null) memory.releaseTemporaries(temporaries, null);
+                    if (profiler != null) profiler.tailCall(function.declaration);
+                } finally {
+                    if (memory != null) release(called, MemoryMeter.callBytes(called.values.length));
+                }
             }
         } finally {
-            this.environment = previous;
+            this.frame = previous;
+            globalSlots = previousGlobals;
+            if (profiler != null) profiler.exit();
         }
     }
 
     // Enables for recursive evaluating -> occurs until eval Literals
     // expr.accept(this) calls Expr to recursively call interpreter to interpret expression
     private Object evaluate(Expr expr) {
+        if (stats != null) stats.evaluated(expr);
         return expr.accept(this);
     }
 
+    // Numeric side channel to evaluate(), intermediate doubles are never boxed.
+    // When the subtree does not produce a plain double the real value is left in
+    // boxedResult and the returned double must be ignored, see takeBoxedResult().
+    private double evaluateDouble(Expr expr) {
+        // The nodes handled here bypass evaluate(), so they are counted here instead
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            if (binary.node.kind == BinaryNode.DOUBLE_ARITHMETIC) {
+                if (stats != null) stats.evaluated(expr);
+                return arithmeticDouble(binary);
+            }
+        } else if (expr instanceof Expr.Grouping) {
+            if (stats != null) stats.evaluated(expr);
+            return evaluateDouble(((Expr.Grouping) expr).expression);
+        } else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.MINUS) {
+            if (stats != null) stats.evaluated(expr);
+            return negateDouble((Expr.Unary) expr);
+        }
+        if (stats != null) stats.evaluated(expr);
+        return unbox(expr.accept(this));
+    }
+
+    private double unbox(Object value) {
+        if (value instanceof Double) return (double) value;
+        boxedResult = value;
+        return 0;
+    }
+
+    // Returns UNBOXED when the last evaluateDouble() result was a plain double
+    private Object takeBoxedResult() {
+        Object value = boxedResult;
+        boxedResult = UNBOXED;
+        return value;
+    }
+
+    private double arithmeticDouble(Expr.Binary expr) {
+        double left = evaluateDouble(expr.left);
+        Object boxedLeft = takeBoxedResult();
+        double right = evaluateDouble(expr.right);
+        Object boxedRight = takeBoxedResult();
+
+        if (boxedLeft == UNBOXED && boxedRight == UNBOXED) {
+            switch (expr.operator.type) {
+                case PLUS:
+                    return left + right;
+                case MINUS:
+                    return left - right;
+                case STAR:
+                    return left * right;
+                case SLASH:
+                    if (right != 0.0) return left / right;
+                    break;
+            }
+        }
+
+        // Type miss or division by zero, box the operands and let the node handle it
+        return unbox(expr.node.execute(this, expr,
+                boxedLeft == UNBOXED ? box(left) : boxedLeft,
+                boxedRight == UNBOXED ? box(right) : boxedRight));
+    }
+
+    private Object compareDouble(Expr.Binary expr) {
+        double left = evaluateDouble(expr.left);
+        Object boxedLeft = takeBoxedResult();
+        double right = evaluateDouble(expr.right);
+        Object boxedRight = takeBoxedResult();
+
+        if (boxedLeft == UNBOXED && boxedRight == UNBOXED) {
+            switch (expr.operator.type) {
+                case GREATER:
+                    return left > right;
+                case GREATER_EQUAL:
+                    return left >= right;
+                case LESS:
+                    return left < right;
+                case LESS_EQUAL:
+                    return left <= right;
+            }
+        }
+
+        return expr.node.execute(this, expr,
+                boxedLeft == UNBOXED ? box(left) : boxedLeft,
+                boxedRight == UNBOXED ? box(right) : boxedRight);
+    }
+
+    private Object box(double value) {
+        if (stats != null) stats.boxedDoubles++;
+        return value;
+    }
+
+    private double negateDouble(Expr.Unary expr) {
+        double right = evaluateDouble(expr.right);
+        Object boxedRight = takeBoxedResult();
+        if (boxedRight == UNBOXED) return -right;
+
+        checkNumberOperand(expr.operator, boxedRight);
+        return -(double) boxedRight;
+    }
+
     // Need to not return anything as no values produced;
     // Expression interpreter
     @Override
@@ -98,8 +309,8 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt);
-        environment.define(stmt.name.lexeme, function);
+        LoxFunction function = new LoxFunction(stmt, frame, globalSlots);
+        define(stmt.name, stmt.slot, stmt.global, function);
         return null;
     }
 
@@ -119,6 +330,7 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     public Void visitWhileStmt(Stmt.While stmt) {
         try {
             while (isTruthy(evaluate(stmt.condition))) {
+                if (budget != null && --budget.remaining == 0) checkpoint(stmt.keyword);
                 execute(stmt.body);
             }
         } catch (BreakException ex) {
@@ -130,17 +342,106 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     // Break Statement
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new BreakException();
+        throw BREAK;
     }
 
     // Create print interpreter
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        output.print(value);
         return null;
     }
 
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) return tailCall((Expr.Call) stmt.value);
+
+        Object value = null;
+        if (stmt.value != null) value = evaluate(stmt.value);
+
+        throw returnSignal.with(value);
+    }
+
+    // Lox callees are not called here, their frame is filled and handed to callFunction() by the caller
+    private Void tailCall(Expr.Call expr) {
+        Object callee = evaluate(expr.callee);
+        if (!(callee instanceof LoxFunction)) {
+            throw returnSignal.with(call(callee, expr));
+        }
+
+        LoxFunction function = (LoxFunction) callee;
+        throw returnSignal.tailCall(function, frameFor(function, expr));
+    }
+
+    // New frame for a call of function with the arguments of expr in its first slots
+    private Frame frameFor(LoxFunction function, Expr.Call expr) {
+        if (budget != null && --budget.remaining == 0) checkpoint(expr.paren);
+        if (memory != null) return meteredFrameFor(function, expr);
+        List<Expr> arguments = expr.arguments;
+        if (arguments.size() != function.arity()) {
+            for (Expr argument : arguments) {
+                evaluate(argument);
+            }
+            checkArity(function, expr);
+        }
+
+        Frame calleeFrame = function.newFrame();
+        for (int i = 0; i < arguments.size(); i++) {
+            calleeFrame.values[i] = evaluate(arguments.get(i));
+        }
+        return calleeFrame;
+    }
+
+    // frameFor() charging the call before it allocates the frame
+    private Frame meteredFrameFor(LoxFunction function, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        if (arguments.size() != function.arity()) {
+            for (Expr argument : arguments) {
+                evaluate(argument);
+            }
+            checkArity(function, expr);
+        }
+
+        long bytes = MemoryMeter.callBytes(function.declaration.frameSize);
+        checkMemory(expr.paren, memory.allocateFrame(bytes));
+        Frame calleeFrame;
+        try {
+            calleeFrame = function.newFrame();
+            for (int i = 0; i < arguments.size(); i++) {
+                calleeFrame.values[i] = evaluate(arguments.get(i));
+            }
+            checkMemory(expr.paren, memory.holdAll(calleeFrame.values, 0, arguments.size()));
+        } catch (RuntimeError | StackOverflowError error) {
+            memory.releaseFrame(bytes);
+            throw error;
+        }
+        calleeFrame.counted = true;
+        return calleeFrame;
+    }
+
+    // Calls from outside Lox code (see LoxFunction), frame already holds the arguments
+    Object enter(LoxFunction function, Frame frame) {
+        if (memory != null) {
+            long bytes = MemoryMeter.callBytes(frame.values.length);
+            checkMemory(function.declaration.name, memory.allocateFrame(bytes));
+            String exceeded = memory.holdAll(frame.values, 0, function.arity());
+            if (exceeded != null) {
+                memory.releaseFrame(bytes);
+                throw new RuntimeError(function.declaration.name, exceeded);
+            }
+            frame.counted = true;
+        }
+        return callFunction(function, frame);
+    }
+
+    // Gives back a frame charged with bytes and the holds of its values
+    private void release(Frame frame, long bytes) {
+        memory.releaseAll(frame.values, 0, frame.values.length);
+        frame.counted = false;
+        memory.releaseFrame(bytes);
+    }
+
     //  Declaration statements
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
@@ -149,14 +450,49 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
+        define(stmt.name, stmt.slot, stmt.global, value);
         return null;
     }
 
+    // Locals are written to the slot the Resolver picked, globals to the slot their number links to
+    private void define(Token name, int slot, int global, Object value) {
+        if (memory != null) checkMemory(name, memory.hold(value));
+        Object replaced;
+        if (slot != -1) {
+            replaced = frame.values[slot];
+            frame.values[slot] = value;
+        } else {
+            replaced = globals.define(globalSlots[global], value);
+        }
+        if (memory != null) memory.release(replaced);
+    }
+
     // Interpreting Block statements
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        // Nothing to run and nothing to declare, so no frame to create or charge
+        if (stmt.statements.isEmpty()) return null;
+
+        if (stats != null) stats.frames++;
+        long frameBytes = 0;
+        if (memory != null) {
+            frameBytes = MemoryMeter.frameBytes(stmt.frameSize);
+            String exceeded = memory.allocateFrame(frameBytes);
+            if (exceeded != null) {
+                throw new RuntimeError(new Token(TokenType.EOF, "", null, stmt.line), exceeded);
+            }
+        }
+        Frame previous = frame;
+        try {
+            frame = new Frame(previous, stmt.frameSize);
+            frame.counted = memory != null;
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+        } finally {
+            if (memory != null) release(frame, frameBytes);
+            frame = previous;
+        }
         return null;
     }
 
@@ -180,7 +516,7 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     // Get the variable name
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        Object value = environment.get(expr.name);
+        Object value = lookUpVariable(expr);
         if (value == uninitialized) {
             throw new RuntimeError(expr.name, "Variable must be initialized before use.");
         }
@@ -191,10 +527,49 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        if (memory != null) return meteredAssign(expr, value);
+        if (expr.depth != -1) {
+            if (stats != null) stats.assigned(expr.depth);
+            frame.assignAt(expr.depth, expr.slot, value);
+        } else {
+            if (stats != null) stats.globalAssigns++;
+            globals.assign(expr.name, globalSlots[expr.global], value);
+        }
         return value;
     }
 
+    // The variable holds value instead of what it replaces, unless it is in a frame
+    // whose scope has exited and that only a closure still reaches
+    private Object meteredAssign(Expr.Assign expr, Object value) {
+        if (expr.depth != -1) {
+            if (stats != null) stats.assigned(expr.depth);
+            Frame target = frame.ancestor(expr.depth);
+            if (!target.counted) {
+                target.values[expr.slot] = value;
+                return value;
+            }
+            checkMemory(expr.name, memory.hold(value));
+            memory.release(target.values[expr.slot]);
+            target.values[expr.slot] = value;
+        } else {
+            if (stats != null) stats.globalAssigns++;
+            checkMemory(expr.name, memory.hold(value));
+            memory.release(globals.assign(expr.name, globalSlots[expr.global], value));
+        }
+        return value;
+    }
+
+    // Locals go straight to the frame slot found by the Resolver, the rest are globals
+    private Object lookUpVariable(Expr.Variable expr) {
+        if (expr.depth != -1) {
+            if (stats != null) stats.read(expr.depth);
+            return frame.getAt(expr.depth, expr.slot);
+        }
+
+        if (stats != null) stats.globalReads++;
+        return globals.get(expr.name, globalSlots[expr.global]);
+    }
+
     // Evaluating Literals
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
@@ -223,13 +598,14 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     //Evaluating unary expressions
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        // Operand stays unboxed, only the result is boxed
+        if (expr.operator.type == TokenType.MINUS) return box(negateDouble(expr));
+
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
             case BANG:
                 return !isTruthy(right);
-            case MINUS:
-                return -(double) right;
         }
         // Unreachable due to error detection in Parsing
         return null;
@@ -239,10 +615,38 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        if (!(callee instanceof LoxFunction)) return call(callee, expr);
+
+        // Lox functions skip call() and callFixedArity(), every Java frame here limits recursion depth
+        LoxFunction function = (LoxFunction) callee;
+        Frame calleeFrame = frameFor(function, expr);
+        try {
+            return callFunction(function, calleeFrame);
+        } catch (StackOverflowError error) {
+            throw new RuntimeError(expr.paren, STACK_OVERFLOW);
+        }
+    }
+
+    private Object call(Object callee, Expr.Call expr) {
+        if (budget != null && --budget.remaining == 0) checkpoint(expr.paren);
+        if (callee instanceof FixedArityCallable && expr.arguments.size() <= 4) {
+            return callFixedArity((FixedArityCallable) callee, expr);
+        }
 
+        if (memory == null) return callWithList(callee, expr);
+        long argumentBytes = MemoryMeter.listBytes(expr.arguments.size());
+        checkMemory(expr.paren, memory.allocateArguments(argumentBytes));
+        try {
+            return callWithList(callee, expr);
+        } finally {
+            memory.releaseArguments(argumentBytes);
+        }
+    }
+
+    private Object callWithList(Object callee, Expr.Call expr) {
         List<Object> arguments = new ArrayList<>();
         for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+            arguments.add(argument(callee, evaluate(argument)));
         }
 
         if (!(callee instanceof LoxCallable)) {
@@ -250,19 +654,99 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
         }
 
         LoxCallable function = (LoxCallable) callee;
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " + function.arity()
-                    + " arguments but got " + arguments.size() + ".");
+        checkArity(function, expr);
+        return function.call(this, arguments);
+    }
+
+    // Arguments are evaluated into locals and passed straight through, no List is built
+    private Object callFixedArity(FixedArityCallable function, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                checkArity(function, expr);
+                return function.call0(this);
+            case 1: {
+                Object a = argument(function, evaluate(arguments.get(0)));
+                checkArity(function, expr);
+                return function.call1(this, a);
+            }
+            case 2: {
+                Object a = argument(function, evaluate(arguments.get(0)));
+                Object b = argument(function, evaluate(arguments.get(1)));
+                checkArity(function, expr);
+                return function.call2(this, a, b);
+            }
+            case 3: {
+                Object a = argument(function, evaluate(arguments.get(0)));
+                Object b = argument(function, evaluate(arguments.get(1)));
+                Object c = argument(function, evaluate(arguments.get(2)));
+                checkArity(function, expr);
+                return function.call3(this, a, b, c);
+            }
+            default: {
+                Object a = argument(function, evaluate(arguments.get(0)));
+                Object b = argument(function, evaluate(arguments.get(1)));
+                Object c = argument(function, evaluate(arguments.get(2)));
+                Object d = argument(function, evaluate(arguments.get(3)));
+                checkArity(function, expr);
+                return function.call4(this, a, b, c, d);
+            }
         }
+    }
 
-        return function.call(this, arguments);
+    // Natives get plain Java Strings, Lox functions keep builder-backed ones as they are
+    private static Object argument(Object callee, Object value) {
+        if (value instanceof LoxString && !(callee instanceof LoxFunction)) return value.toString();
+        return value;
+    }
+
+    // Throws what a MemoryMeter allocation returned, null when it was charged
+    private static void checkMemory(Token where, String exceeded) {
+        if (exceeded != null) throw new RuntimeError(where, exceeded);
+    }
+
+    // Operands are strings or numbers
+    LoxString concat(Token operator, Object left, Object right) {
+        LoxString result = LoxString.concat(left, right, memory);
+        if (result == null) throw new RuntimeError(operator, memory.exceeded());
+        return result;
+    }
+
+    private void checkpoint(Token where) {
+        String exceeded = budget.checkpoint();
+        if (exceeded != null) throw new RuntimeError(where, exceeded);
+    }
+
+    private void checkArity(LoxCallable function, Expr.Call expr) {
+        if (expr.arguments.size() == function.arity()) return;
+        throw new RuntimeError(expr.paren, "Expected " + function.arity()
+                + " arguments but got " + expr.arguments.size() + ".");
     }
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        // Specialized numeric trees are evaluated unboxed and boxed once here
+        switch (expr.node.kind) {
+            case BinaryNode.DOUBLE_ARITHMETIC: {
+                double value = arithmeticDouble(expr);
+                Object boxed = takeBoxedResult();
+                return boxed == UNBOXED ? box(value) : boxed;
+            }
+            case BinaryNode.DOUBLE_COMPARISON:
+                return compareDouble(expr);
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
+        Object result = expr.node.execute(this, expr, left, right);
+        // Numeric results of unspecialized nodes come back freshly boxed
+        if (stats != null && result instanceof Double) stats.boxedDoubles++;
+        return result;
+    }
+
+    // Full operator semantics, reached through BinaryNode once a node has gone generic
+    Object binary(Expr.Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case GREATER:
                 checkNumberOperands(expr.operator, left, right);
@@ -284,14 +768,10 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-                if (left instanceof Double && right instanceof String) {
-                    return (stringify(left) + (String) right);
-                }
-                if (left instanceof String && right instanceof Double) {
-                    return ((String) left + stringify(right));
+                // Strings, or one string and one number
+                if ((LoxString.isString(left) || left instanceof Double) &&
+                        (LoxString.isString(right) || right instanceof Double)) {
+                    return concat(expr.operator, left, right);
                 }
                 throw new RuntimeError(expr.operator,
                         "Operands must be numbers or strings.");
@@ -332,31 +812,28 @@ forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")"
 
     // Evaluates if object is true or false
     // Follows Ruby ==> ie. false & nil == FALSE, else TRUE
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
     // checks if left and right is equal
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
 
+        // A concatenated string equals a literal with the same chars
+        if (a instanceof LoxString) a = a.toString();
+        if (b instanceof LoxString) b = b.toString();
         return a.equals(b);
     }
 
     // Takes syntax tree of expression and converts to string
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
-        if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
-        }
+        if (object instanceof Double) return NumberFormatter.format((double) object);
         return object.toString();
     }
 
@@ -0,0 +1,89 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+Counters for the Interpreter's hot paths, turned on with --stats and dumped
+as JSON at exit.
+
+    evaluations  → execute()/evaluate() calls per Stmt and Expr node class
+    local hops   → how many frames up each local read/assignment had to walk
+    globals      → reads and assignments that went to the globals table
+    frames       → Frames created, one per non-empty block entered and per call
+    boxed doubles → numeric results turned back into Double objects
+
+An Interpreter runs on one thread and owns its InterpreterStats, so the
+counters are plain fields, no striping or atomics are needed. Interpreter.stats
+is null unless --stats was given, the cost when disabled is a null check.
+ */
+class InterpreterStats {
+    private static final int MAX_HOPS = 16; // deeper walks share the last bucket
+
+    // Node classes in the order they were first seen
+    private final Map<Class<?>, long[]> evaluations = new LinkedHashMap<>();
+    private final ClassValue<long[]> counters = new ClassValue<long[]>() {
+        @Override
+        protected long[] computeValue(Class<?> type) {
+            long[] counter = new long[1];
+            evaluations.put(type, counter);
+            return counter;
+        }
+    };
+
+    private final long[] readHops = new long[MAX_HOPS + 1];
+    private final long[] assignHops = new long[MAX_HOPS + 1];
+    long globalReads = 0;
+    long globalAssigns = 0;
+    long frames = 0;
+    long boxedDoubles = 0;
+
+    void evaluated(Object node) {
+        counters.get(node.getClass())[0]++;
+    }
+
+    void read(int hops) {
+        readHops[Math.min(hops, MAX_HOPS)]++;
+    }
+
+    void assigned(int hops) {
+        assignHops[Math.min(hops, MAX_HOPS)]++;
+    }
+
+    void writeJson(PrintStream out) {
+        out.println("{");
+        out.println("  \"statements\": " + evaluationsJson(true) + ",");
+        out.println("  \"expressions\": " + evaluationsJson(false) + ",");
+        out.println("  \"localReadHops\": " + hopsJson(readHops) + ",");
+        out.println("  \"localAssignHops\": " + hopsJson(assignHops) + ",");
+        out.println("  \"globalReads\": " + globalReads + ",");
+        out.println("  \"globalAssigns\": " + globalAssigns + ",");
+        out.println("  \"framesCreated\": " + frames + ",");
+        out.println("  \"boxedDoubles\": " + boxedDoubles);
+        out.println("}");
+        out.flush();
+    }
+
+    private String evaluationsJson(boolean statements) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<Class<?>, long[]> entry : evaluations.entrySet()) {
+            if (Stmt.class.isAssignableFrom(entry.getKey()) != statements) continue;
+            if (json.length() > 1) json.append(", ");
+            json.append('"').append(entry.getKey().getSimpleName()).append("\": ").append(entry.getValue()[0]);
+        }
+        return json.append("}").toString();
+    }
+
+    // Only non-empty buckets, keyed by hop count
+    private static String hopsJson(long[] hops) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < hops.length; i++) {
+            if (hops[i] == 0) continue;
+            if (json.length() > 1) json.append(", ");
+            String bucket = i == MAX_HOPS ? MAX_HOPS + "+" : String.valueOf(i);
+            json.append('"').append(bucket).append("\": ").append(hops[i]);
+        }
+        return json.append("}").toString();
+    }
+}
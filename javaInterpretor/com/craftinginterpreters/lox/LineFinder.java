@@ -0,0 +1,131 @@
+package com.craftinginterpreters.lox;
+
+/*
+Line of the first token in a statement, -1 when it has none (e.g. a bare literal).
+
+Used by the Interpreter's runtime errors and the Profiler's hot lines when
+what they are about is a whole statement rather than one of its tokens.
+ */
+class LineFinder implements Stmt.Visitor<Integer>, Expr.Visitor<Integer> {
+    private static final LineFinder INSTANCE = new LineFinder();
+
+    static int lineOf(Stmt stmt) {
+        return stmt.accept(INSTANCE);
+    }
+
+    private int lineOf(Expr expr) {
+        if (expr == null) return -1;
+        return expr.accept(this);
+    }
+
+    private int first(int line, Expr expr) {
+        if (line != -1) return line;
+        return lineOf(expr);
+    }
+
+    private int first(Expr expr, Token token) {
+        int line = lineOf(expr);
+        if (line != -1) return line;
+        return token.line;
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            int line = lineOf(statement);
+            if (line != -1) return line;
+        }
+        return -1;
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+        return -1;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+        return lineOf(stmt.expression);
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+        return lineOf(stmt.condition);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+        return lineOf(stmt.expression);
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+        return stmt.keyword.line;
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+        return stmt.name.line;
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+        // Not the condition, a literal one such as while (true) has no line
+        return stmt.keyword.line;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        return first(expr.left, expr.operator);
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        return first(expr.callee, expr.paren);
+    }
+
+    @Override
+    public Integer visitCommaCollectionExpr(Expr.CommaCollection expr) {
+        return first(expr.left, expr.operator);
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return lineOf(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return -1;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        return first(expr.left, expr.operator);
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        return expr.operator.line;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return expr.name.line;
+    }
+
+    @Override
+    public Integer visitTernaryExpr(Expr.Ternary expr) {
+        return first(first(lineOf(expr.condition), expr.trueLeg), expr.falseLeg);
+    }
+}
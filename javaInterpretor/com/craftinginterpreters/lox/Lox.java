@@ -3,10 +3,12 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 /*
 program        → declaration* EOF ;
@@ -18,29 +20,175 @@ printStmt      → "print" expression ";" ;
 
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false; // is there error in lox code?
-    static boolean hadRuntimeError = false; // is there runtime error in lox code?
+    private static LoxEngine engine; // the command line runs everything on one engine
+    private static boolean useVm = false; // run through the bytecode VM instead of the tree-walker
+    private static boolean optimize = false; // fold constants and drop dead branches before running
+    private static boolean profile = false; // --profile
+    private static boolean stats = false; // --stats
+    private static ScriptCache cache = null; // resolved programs of files run before, set by --cache=dir
+    private static int outputBuffer = BufferedSink.DEFAULT_CAPACITY; // chars of print output held back, --output-buffer=n
+    private static long flushInterval = BufferedSink.DEFAULT_FLUSH_INTERVAL_MILLIS; // --flush-interval=ms
+    private static String batch = null; // directory or manifest of scripts, set by --batch=path
+    private static int threads = Runtime.getRuntime().availableProcessors(); // --threads=n, for --batch
+    private static long maxSteps = 0; // loop iterations and calls per run, --max-steps=n, 0 for no limit
+    private static long timeout = 0; // --timeout=ms, 0 for no limit
+    private static long maxMemory = -1; // bytes per script, --max-memory=size; 0 for --memory, -1 when not metered
+    // Stack of the threads scripts run on. Every Lox call recurses through a handful of Java frames in the
+    // tree-walker, the default thread stack runs out below a thousand calls deep. Reserved, not committed, up front.
+    static final long STACK_BYTES = 512L << 20;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(args);
+            } catch (Throwable error) {
+                failure[0] = error;
+            }
+        }, "lox", STACK_BYTES);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (failure[0] instanceof IOException) throw (IOException) failure[0];
+        if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+        if (failure[0] instanceof Error) throw (Error) failure[0];
+    }
+
+    private static void start(String[] args) throws IOException {
+        String script = null;
+        for (String arg : args) {
+            if (arg.equals("--vm")) {
+                useVm = true;
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--profile")) {
+                profile = true;
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.startsWith("--cache=")) {
+                cache = new ScriptCache(Paths.get(arg.substring("--cache=".length())), ScriptCache.DEFAULT_MAX_BYTES);
+            } else if (arg.startsWith("--output-buffer=")) {
+                outputBuffer = (int) number(arg, "--output-buffer=", Integer.MAX_VALUE);
+            } else if (arg.startsWith("--flush-interval=")) {
+                flushInterval = number(arg, "--flush-interval=", Integer.MAX_VALUE);
+            } else if (arg.startsWith("--max-steps=")) {
+                maxSteps = number(arg, "--max-steps=", Long.MAX_VALUE);
+            } else if (arg.startsWith("--timeout=")) {
+                timeout = number(arg, "--timeout=", Integer.MAX_VALUE);
+            } else if (arg.equals("--memory")) {
+                if (maxMemory == -1) maxMemory = 0;
+            } else if (arg.startsWith("--max-memory=")) {
+                maxMemory = bytes(arg, "--max-memory=");
+                if (maxMemory == 0) usage();
+            } else if (arg.startsWith("--batch=")) {
+                batch = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = (int) number(arg, "--threads=", Integer.MAX_VALUE);
+                if (threads == 0) usage();
+            } else if (arg.startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+
+        if (useVm && (profile || stats)) {
+            System.err.println("--profile and --stats only work with the tree-walking interpreter.");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+        if (batch != null) {
+            if (script != null) usage();
+            if (profile || stats) {
+                System.err.println("--profile and --stats only work on a single script.");
+                System.exit(64);
+            }
+            System.exit(new BatchRunner(threads, useVm, optimize, maxSteps, timeout, maxMemory).run(Paths.get(batch)));
+        }
+
+        // The REPL keeps an unbuffered sink so every print shows up right away
+        OutputSink output = script != null
+                ? BufferedSink.stdout(outputBuffer, flushInterval)
+                : new PrintStreamSink(System.out);
+        engine = new LoxEngine(output, System.err).useVm(useVm).optimize(optimize).limit(maxSteps, timeout);
+        if (maxMemory != -1) engine.limitMemory(maxMemory);
+        if (profile) {
+            engine.interpreter.profiler = new Profiler();
+            engine.interpreter.profiler.start();
+        }
+        if (stats) engine.interpreter.stats = new InterpreterStats();
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
-    // Interprets whole File
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm] [--optimize] [--profile] [--stats] [--cache=dir]"
+                + " [--output-buffer=chars] [--flush-interval=ms]"
+                + " [--max-steps=n] [--timeout=ms] [--memory] [--max-memory=bytes[k|m|g]]"
+                + " [script | --batch=dir|manifest [--threads=n]]");
+        System.exit(64);
+    }
+
+    // Value of a --flag=n argument, from 0 to max
+    private static long number(String arg, String flag, long max) {
+        try {
+            long value = Long.parseLong(arg.substring(flag.length()));
+            if (value >= 0 && value <= max) return value;
+        } catch (NumberFormatException error) {
+            // Falls through to usage
+        }
+        usage();
+        return 0;
+    }
+
+    // Value of a --flag=size argument, a byte count with an optional k, m or g suffix
+    private static long bytes(String arg, String flag) {
+        String size = arg.substring(flag.length()).toLowerCase();
+        int shift = 0;
+        if (size.endsWith("k")) shift = 10;
+        if (size.endsWith("m")) shift = 20;
+        if (size.endsWith("g")) shift = 30;
+        if (shift != 0) size = size.substring(0, size.length() - 1);
+        long value = number(flag + size, flag, Long.MAX_VALUE >> shift);
+        return value << shift;
+    }
+
+    // Interprets whole File, streamed through the scanner instead of read up front
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        Program program = compile(engine, Paths.get(path));
+        if (program != null) engine.run(program);
 
-        // Indicate if there is an error / exit code;
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        report();
+
+        int status = exitStatus(engine);
+        if (status != 0) System.exit(status);
+    }
+
+    // Indicate if there is an error / exit code;
+    static int exitStatus(LoxEngine engine) {
+        if (engine.hadError()) return 65;
+        if (engine.hadRuntimeError()) return 70;
+        return 0;
+    }
+
+    // Script file compiled for engine, through the cache when there is one; null if it has errors
+    static Program compile(LoxEngine engine, Path path) throws IOException {
+        if (cache != null) return compileCached(engine, path);
+
+        ErrorReporter reporter = engine.reporter;
+        try (FileChannel channel = FileChannel.open(path)) {
+            return engine.compile(new Parser(new Scanner(channel, Charset.defaultCharset(), reporter), reporter));
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        }
     }
 
     // Interprets single lines
@@ -52,44 +200,32 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            engine.run(line);
+            engine.reporter.errors = 0;
         }
+        report();
     }
 
-    // Runs the code itself
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-
-        if (hadError) return;
-        interpreter.interpret(statements);
+    // Profile, stats and memory go to stderr so they never mix with the script's output
+    private static void report() {
+        Interpreter interpreter = engine.interpreter;
+        if (interpreter.profiler != null) interpreter.profiler.report(System.err);
+        if (interpreter.stats != null) interpreter.stats.writeJson(System.err);
+        engine.reportMemory(System.err);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
-    }
+    // The source has to be hashed up front, so a cached run reads the whole file instead of streaming it
+    private static Program compileCached(LoxEngine engine, Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        Charset charset = Charset.defaultCharset();
+        String key = cache.key(bytes, charset, engine.optimizes());
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
-    }
+        Program cached = cache.load(key);
+        if (cached != null) return cached;
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+        Program program = engine.compile(new String(bytes, charset));
+        // Programs with errors are never cached, they report them again next time
+        if (program != null) cache.store(key, program);
+        return program;
     }
-
-
 }
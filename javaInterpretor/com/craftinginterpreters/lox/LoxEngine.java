@@ -0,0 +1,166 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/*
+Embedding API, one engine per independent script context.
+
+An engine owns everything running a script can change: the globals of its
+Interpreter and VM, its error state, and the streams print and errors go to.
+None of it is static, so separate engines can run on separate threads. One
+engine must only be used by one thread at a time.
+
+The tree-walker recurses on the Java stack of the thread that calls run(),
+so how deep Lox calls can go depends on that thread's stack size (Lox runs
+scripts on threads with Lox.STACK_BYTES). Running out is reported as the
+runtime error "Stack overflow." at the call that failed. The VM keeps its
+call stack on the heap, so its depth does not depend on the thread, and
+reports the same error once VM.MAX_FRAMES calls are active.
+
+    LoxEngine engine = new LoxEngine(out, err);
+    Program program = engine.compile(source);
+    if (program != null) engine.run(program);
+
+A Program can be run by many engines at once. Its trees hold nothing that
+belongs to an engine: globals are numbered per program, and each engine
+links those numbers to its own Environment. The one thing running writes
+to a tree is Expr.Binary's node, a plain reference to a stateless
+BinaryNode whose races are benign (see there), so sharing needs no locking.
+ */
+public final class LoxEngine {
+    final ErrorReporter reporter;
+    final Interpreter interpreter;
+    private final OutputSink output;
+    private VM vm = null; // created the first time the engine runs on the VM
+    private boolean useVm = false;
+    private boolean optimize = false;
+    private Budget budget = null;
+    private MemoryMeter memory = null;
+
+    // Prints to System.out, reports errors to System.err
+    public LoxEngine() {
+        this(System.out, System.err);
+    }
+
+    public LoxEngine(PrintStream out, PrintStream err) {
+        this(new PrintStreamSink(out), err);
+    }
+
+    LoxEngine(OutputSink output, PrintStream err) {
+        this.reporter = new ErrorReporter(err);
+        this.output = output;
+        this.interpreter = new Interpreter(reporter);
+        interpreter.output = output;
+    }
+
+    // Runs programs on the bytecode VM instead of the tree-walker
+    public LoxEngine useVm(boolean useVm) {
+        this.useVm = useVm;
+        return this;
+    }
+
+    // Stops every run after maxSteps loop iterations and calls or after timeoutMillis, 0 for no limit
+    public LoxEngine limit(long maxSteps, long timeoutMillis) {
+        if (maxSteps < 0 || timeoutMillis < 0) throw new IllegalArgumentException("Limits can't be negative.");
+        if (maxSteps == 0 && timeoutMillis == 0) {
+            budget = null;
+        } else {
+            budget = new Budget(maxSteps, timeoutMillis);
+        }
+        interpreter.budget = budget;
+        if (vm != null) vm.budget = budget;
+        return this;
+    }
+
+    // Meters frames, call stacks, concatenated strings and argument lists, and stops a run
+    // before it holds more than maxBytes of them; 0 meters without a limit
+    public LoxEngine limitMemory(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Limits can't be negative.");
+        memory = new MemoryMeter(maxBytes);
+        interpreter.memory = memory;
+        if (vm != null) vm.memory = memory;
+        return this;
+    }
+
+    // Most bytes metered at once so far, -1 unless limitMemory() was called
+    public long peakMemory() {
+        return memory == null ? -1 : memory.peak();
+    }
+
+    void reportMemory(PrintStream out) {
+        if (memory != null) memory.report(out);
+    }
+
+    // Folds constants and drops dead branches in programs compiled from now on
+    public LoxEngine optimize(boolean optimize) {
+        this.optimize = optimize;
+        return this;
+    }
+
+    boolean optimizes() {
+        return optimize;
+    }
+
+    public boolean hadError() {
+        return reporter.hadError();
+    }
+
+    public boolean hadRuntimeError() {
+        return reporter.hadRuntimeError();
+    }
+
+    // Null if the source has errors, they go to this engine's error stream
+    public Program compile(String source) {
+        return compile(new Parser(new Scanner(source, reporter).scanCompact(), reporter));
+    }
+
+    // Parses, resolves and optimizes, null if any of it reported an error
+    Program compile(Parser parser) {
+        int errors = reporter.errors;
+        List<Stmt> statements = parser.parse();
+        if (reporter.errors != errors) return null;
+
+        // The whole tree is checked before the Optimizer drops dead code, so optimizing
+        // never changes which programs are accepted
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        if (reporter.errors != errors) return null;
+
+        if (optimize) {
+            statements = new Optimizer().optimize(statements);
+            // Dropped declarations change slots, frame sizes and which globals are used
+            resolver = new Resolver(reporter);
+            resolver.resolve(statements);
+        }
+        return new Program(statements, resolver.globalNames());
+    }
+
+    // False if the program could not run to the end
+    public boolean run(Program program) {
+        int errors = reporter.errors + reporter.runtimeErrors;
+        if (useVm) {
+            VmFunction script = program.script(reporter);
+            if (script == null) return false;
+            vm().interpret(script, program.globalNames);
+        } else {
+            interpreter.interpret(program.statements, program.globalNames);
+        }
+        return reporter.errors + reporter.runtimeErrors == errors;
+    }
+
+    public boolean run(String source) {
+        Program program = compile(source);
+        return program != null && run(program);
+    }
+
+    private VM vm() {
+        if (vm == null) {
+            vm = new VM(reporter);
+            vm.output = output;
+            vm.budget = budget;
+            vm.memory = memory;
+        }
+        return vm;
+    }
+}
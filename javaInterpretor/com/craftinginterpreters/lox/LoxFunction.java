@@ -2,22 +2,71 @@ package com.craftinginterpreters.lox;
 
 import java.util.List;
 
-class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
+// Calls from Lox code go through Interpreter.callFunction() directly, these entry points serve everything else
+// through Interpreter.enter()
+class LoxFunction implements FixedArityCallable {
+    final Stmt.Function declaration;
+    private final Frame closure;
+    // Engine slots of the globals of the program that declared the function
+    final int[] globalSlots;
 
-    LoxFunction(Stmt.Function declaration) {
+    LoxFunction(Stmt.Function declaration, Frame closure, int[] globalSlots) {
         this.declaration = declaration;
+        this.closure = closure;
+        this.globalSlots = globalSlots;
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(interpreter.globals);
+        Frame frame = new Frame(closure, declaration.frameSize);
         for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+            frame.values[i] = arguments.get(i);
         }
+        return interpreter.enter(this, frame);
+    }
+
+    // Parameters take the first slots, body locals follow in the same frame
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return interpreter.enter(this, new Frame(closure, declaration.frameSize));
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Frame frame = new Frame(closure, declaration.frameSize);
+        frame.values[0] = a;
+        return interpreter.enter(this, frame);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Frame frame = new Frame(closure, declaration.frameSize);
+        frame.values[0] = a;
+        frame.values[1] = b;
+        return interpreter.enter(this, frame);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Frame frame = new Frame(closure, declaration.frameSize);
+        frame.values[0] = a;
+        frame.values[1] = b;
+        frame.values[2] = c;
+        return interpreter.enter(this, frame);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        Frame frame = new Frame(closure, declaration.frameSize);
+        frame.values[0] = a;
+        frame.values[1] = b;
+        frame.values[2] = c;
+        frame.values[3] = d;
+        return interpreter.enter(this, frame);
+    }
 
-        interpreter.executeBlock(declaration.body, environment);
-        return null;
+    Frame newFrame() {
+        return new Frame(closure, declaration.frameSize);
     }
 
     @Override
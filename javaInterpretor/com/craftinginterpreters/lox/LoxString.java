@@ -0,0 +1,127 @@
+package com.craftinginterpreters.lox;
+
+/*
+String value produced by concatenation at runtime, literals stay plain Strings.
+
+A LoxString is the first length chars of a StringBuilder that may be shared
+with other values. Builders only ever grow, so that prefix never changes.
+Concatenating onto the value that ends at the builder's current end appends
+in place instead of copying, which makes the usual
+
+    s = s + piece;
+
+loop linear instead of quadratic. Appending to an older value, whose builder
+has since grown past it, copies it into a new builder like String + would.
+
+The chars are flattened into a String, once, the first time the value is
+printed, compared or handed to a native. Values belong to one interpreter
+thread, like everything else it evaluates.
+
+When memory is metered, every value built on a builder shares its
+MemoryMeter.StringCharge. A builder is charged for the capacity it is about
+to grow to before it grows, so appending must never outgrow the capacity
+concat() reserved.
+ */
+final class LoxString implements CharSequence {
+    private final StringBuilder chars;
+    private final int length;
+    final MemoryMeter.StringCharge charge; // null unless memory is metered
+    private String flat = null;
+
+    private LoxString(StringBuilder chars, int length, MemoryMeter.StringCharge charge) {
+        this.chars = chars;
+        this.length = length;
+        this.charge = charge;
+    }
+
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    // Operands are strings (isString) or numbers, numbers are written as stringify() would.
+    // memory is null when not metered. Null, with nothing allocated, when memory would go
+    // over its limit
+    static LoxString concat(Object left, Object right, MemoryMeter memory) {
+        StringBuilder chars;
+        MemoryMeter.StringCharge charge;
+        if (left instanceof LoxString && ((LoxString) left).length == ((LoxString) left).chars.length()) {
+            chars = ((LoxString) left).chars;
+            charge = ((LoxString) left).charge;
+            int needed = chars.length() + maxLengthOf(right);
+            if (memory != null) {
+                // What ensureCapacity() would grow to anyway, so the charge matches the builder
+                int capacity = needed > chars.capacity() ? Math.max(needed, 2 * chars.capacity() + 2) : chars.capacity();
+                if (memory.allocateString(charge, capacity) != null) return null;
+                chars.ensureCapacity(capacity);
+            }
+        } else {
+            int capacity = Math.max(Math.max(16, 2 * (lengthOf(left) + lengthOf(right))),
+                    maxLengthOf(left) + maxLengthOf(right));
+            charge = null;
+            if (memory != null) {
+                charge = new MemoryMeter.StringCharge();
+                if (memory.allocateString(charge, capacity) != null) return null;
+            }
+            chars = new StringBuilder(capacity);
+            append(chars, left);
+        }
+        append(chars, right);
+        return new LoxString(chars, chars.length(), charge);
+    }
+
+    // Exact for strings, a guess for numbers
+    private static int lengthOf(Object value) {
+        if (value instanceof Double) return 8;
+        return ((CharSequence) value).length();
+    }
+
+    // Exact for strings, the longest text a number can have otherwise ("-2.2250738585072014E-308")
+    private static int maxLengthOf(Object value) {
+        if (value instanceof Double) return 24;
+        return ((CharSequence) value).length();
+    }
+
+    // Appends a string (isString) or a number as stringify() would
+    static void append(StringBuilder chars, Object value) {
+        if (value instanceof Double) {
+            NumberFormatter.append(chars, (double) value);
+        } else if (value instanceof LoxString) {
+            LoxString string = (LoxString) value;
+            if (string.flat != null) {
+                chars.append(string.flat);
+            } else {
+                chars.append(string.chars, 0, string.length);
+            }
+        } else {
+            chars.append((String) value);
+        }
+    }
+
+    // value with any LoxString flattened, for code that expects java.lang.String
+    static Object flatten(Object value) {
+        if (value instanceof LoxString) return value.toString();
+        return value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        return chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = chars.substring(0, length);
+        return flat;
+    }
+}
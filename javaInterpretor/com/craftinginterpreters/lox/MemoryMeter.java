@@ -0,0 +1,233 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/*
+Heap used on behalf of one engine's scripts, turned on with --memory or
+--max-memory (LoxEngine.limitMemory()). Going over the limit stops the run
+with a RuntimeError instead of letting one script exhaust the shared heap.
+
+Three kinds of allocation are charged, with sizes estimated for a 64-bit JVM
+with compressed references:
+    frames          → while the block or call that created them runs; a
+                      tree-walker call also pays for the Java stack it takes,
+                      a VM call for its window of the value stack
+    strings         → the char capacity of each concatenation builder, while
+                      something holds a value built on it
+    argument lists  → for the duration of a call that has to build one
+
+Every charge is checked before the allocation it pays for, and an allocation
+that would go over the limit is refused without being charged, so usage
+never exceeds the limit. Since calls are charged, running out of memory
+stops deep recursion before the Java stack does.
+
+Strings are released without help from the JVM's collector. A builder is
+held by the variables and VM stack slots its values are in, and a new string
+is a temporary of the statement that built it until then (the VM puts every
+one on its stack right away). A builder is released once it is neither held
+nor a temporary: when the variable is overwritten, when the block or call
+owning the slot exits, or when the statement ends. Values a closure keeps
+alive are no longer counted once the scope they were declared in exits, and
+count again if they are stored somewhere else.
+
+Interpreter.memory and VM.memory are null when memory is not metered.
+ */
+final class MemoryMeter {
+    private static final long FRAME_BYTES = 32; // Frame and the header of its values array
+    private static final long LIST_BYTES = 40; // ArrayList and the header of its array
+    private static final long CALL_STACK_BYTES = 1024; // Java stack of one tree-walker call, roughly
+    private static final long CALL_FRAME_BYTES = 32; // VM.CallFrame
+    private static final long REFERENCE_BYTES = 4;
+    private static final long NUMBER_BYTES = 8;
+    private static final long CHAR_BYTES = 2;
+
+    // One StringBuilder, shared by every LoxString built on it
+    static final class StringCharge {
+        private long bytes = 0; // char capacity charged so far
+        private int holders = 0;
+        private boolean temporary = false;
+    }
+
+    private final long limit; // Long.MAX_VALUE when only metering
+    private long used = 0;
+    private long peak = 0;
+    long frames = 0; // live frame bytes, the VM unwinds to a mark on return and both engines after a run
+    private long chargedFrames = 0;
+    private long chargedStrings = 0;
+    private long chargedArguments = 0;
+
+    // Strings counted because a statement that is still running built them, oldest first
+    private StringCharge[] temporaries = new StringCharge[16];
+    private int temporaryCount = 0;
+
+    // 0 meters without a limit
+    MemoryMeter(long limit) {
+        this.limit = limit == 0 ? Long.MAX_VALUE : limit;
+    }
+
+    static long frameBytes(int slots) {
+        return FRAME_BYTES + REFERENCE_BYTES * slots;
+    }
+
+    // A tree-walker call with slots locals
+    static long callBytes(int slots) {
+        return CALL_STACK_BYTES + frameBytes(slots);
+    }
+
+    // A VM call whose window is slots high, each slot has a reference and a number
+    static long windowBytes(int slots) {
+        return CALL_FRAME_BYTES + (REFERENCE_BYTES + NUMBER_BYTES) * slots;
+    }
+
+    static long listBytes(int size) {
+        return LIST_BYTES + REFERENCE_BYTES * size;
+    }
+
+    long peak() {
+        return peak;
+    }
+
+    // The allocate methods return null once bytes are charged, otherwise the error to
+    // stop the run with, and then nothing was charged
+
+    String allocateFrame(long bytes) {
+        if (!fits(bytes)) return exceeded();
+        frames += bytes;
+        chargedFrames += bytes;
+        add(bytes);
+        return null;
+    }
+
+    void releaseFrame(long bytes) {
+        frames -= bytes;
+        used -= bytes;
+    }
+
+    // Releases every frame allocated since frames was mark
+    void releaseFramesTo(long mark) {
+        used -= frames - mark;
+        frames = mark;
+    }
+
+    String allocateArguments(long bytes) {
+        if (!fits(bytes)) return exceeded();
+        chargedArguments += bytes;
+        add(bytes);
+        return null;
+    }
+
+    void releaseArguments(long bytes) {
+        used -= bytes;
+    }
+
+    // Before charge's builder grows to capacity chars. Unless something holds it, the
+    // builder becomes a temporary, see releaseTemporaries()
+    String allocateString(StringCharge charge, int capacity) {
+        long grown = CHAR_BYTES * capacity - charge.bytes;
+        boolean counted = isCounted(charge);
+        if (counted && grown == 0) return null;
+        long bytes = counted ? grown : charge.bytes + grown;
+        if (!fits(bytes)) return exceeded();
+        charge.bytes += grown;
+        chargedStrings += grown;
+        add(bytes);
+        if (!counted) addTemporary(charge);
+        return null;
+    }
+
+    // value was stored in a variable or VM stack slot. Null or the error to stop the run
+    // with, when a string nothing counted any more would go over the limit again
+    String hold(Object value) {
+        StringCharge charge = chargeOf(value);
+        if (charge == null) return null;
+        if (!isCounted(charge)) {
+            if (!fits(charge.bytes)) return exceeded();
+            add(charge.bytes);
+        }
+        charge.holders++;
+        return null;
+    }
+
+    // Holds values[from] to values[to - 1], or none of them if that would go over the limit
+    String holdAll(Object[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String exceeded = hold(values[i]);
+            if (exceeded != null) {
+                releaseAll(values, from, i);
+                return exceeded;
+            }
+        }
+        return null;
+    }
+
+    // value left a variable or VM stack slot it was held in
+    void release(Object value) {
+        StringCharge charge = chargeOf(value);
+        if (charge == null) return;
+        if (--charge.holders == 0 && !charge.temporary) used -= charge.bytes;
+    }
+
+    void releaseAll(Object[] values, int from, int to) {
+        for (int i = from; i < to; i++) {
+            release(values[i]);
+        }
+    }
+
+    // Marks the temporaries of a statement about to run, for releaseTemporaries()
+    int temporaries() {
+        return temporaryCount;
+    }
+
+    // Releases every string that became a temporary since mark and is not held. kept, the
+    // result of a call returning, stays counted as a temporary of the caller's statement.
+    void releaseTemporaries(int mark, Object kept) {
+        StringCharge keep = chargeOf(kept);
+        boolean keepCounted = keep != null && isCounted(keep);
+        while (temporaryCount > mark) {
+            StringCharge charge = temporaries[--temporaryCount];
+            temporaries[temporaryCount] = null;
+            charge.temporary = false;
+            if (charge != keep && charge.holders == 0) used -= charge.bytes;
+        }
+        if (keepCounted && !keep.temporary) addTemporary(keep);
+    }
+
+    String exceeded() {
+        return "Memory limit of " + limit + " bytes exceeded.";
+    }
+
+    void report(PrintStream out) {
+        String of = limit == Long.MAX_VALUE ? "" : " of " + limit;
+        out.println("== Memory: peak " + peak + of + " bytes, " + used + " in use at exit ==");
+        out.println(String.format("%14s  %s", "bytes charged", "for"));
+        out.println(String.format("%14d  %s", chargedFrames, "frames"));
+        out.println(String.format("%14d  %s", chargedStrings, "strings"));
+        out.println(String.format("%14d  %s", chargedArguments, "argument lists"));
+        out.flush();
+    }
+
+    private static StringCharge chargeOf(Object value) {
+        if (value instanceof LoxString) return ((LoxString) value).charge;
+        return null;
+    }
+
+    private static boolean isCounted(StringCharge charge) {
+        return charge.holders > 0 || charge.temporary;
+    }
+
+    private void addTemporary(StringCharge charge) {
+        if (temporaryCount == temporaries.length) temporaries = Arrays.copyOf(temporaries, temporaryCount * 2);
+        temporaries[temporaryCount++] = charge;
+        charge.temporary = true;
+    }
+
+    private boolean fits(long bytes) {
+        return bytes <= limit - used;
+    }
+
+    private void add(long bytes) {
+        used += bytes;
+        if (used > peak) peak = used;
+    }
+}
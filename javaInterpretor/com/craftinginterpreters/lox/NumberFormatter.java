@@ -0,0 +1,41 @@
+package com.craftinginterpreters.lox;
+
+/*
+Text of a Lox number, the way stringify() has always printed it: what
+Double.toString gives, minus a trailing ".0".
+
+Whole numbers below 10^7 take a fast path that appends the value as a long.
+From 10^7 on Double.toString switches to exponent form ("1.0E7"), so larger
+values, fractions, NaN and the infinities go through StringBuilder.append(double),
+which formats straight into the builder without an intermediate String.
+-0.0 keeps printing as "-0".
+ */
+final class NumberFormatter {
+    // Smallest magnitude Double.toString writes in exponent form
+    private static final double EXPONENT_THRESHOLD = 1e7;
+
+    private NumberFormatter() {
+    }
+
+    static String format(double value) {
+        StringBuilder text = new StringBuilder(24);
+        append(text, value);
+        return text.toString();
+    }
+
+    static void append(StringBuilder out, double value) {
+        long whole = (long) value;
+        if (whole == value && Math.abs(value) < EXPONENT_THRESHOLD) {
+            if (whole == 0 && Double.doubleToRawLongBits(value) != 0) out.append('-');
+            out.append(whole);
+            return;
+        }
+
+        int start = out.length();
+        out.append(value);
+        int end = out.length();
+        if (end - start > 2 && out.charAt(end - 2) == '.' && out.charAt(end - 1) == '0') {
+            out.setLength(end - 2);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.craftinginterpreters.lox;
+
+/*
+Instruction set for the bytecode VM.
+
+Plain byte constants instead of an enum so the VM can switch on the raw byte.
+Operands follow the opcode; u16 operands are big endian. Local slots count
+from the first argument of the running call, see Compiler.
+ */
+final class OpCode {
+    static final byte CONSTANT = 0;         // u16 constant index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte UNINITIALIZED = 4;    // value of 'var x;' until assigned
+    static final byte POP = 5;
+
+    static final byte GET_LOCAL = 6;        // u16 slot
+    static final byte SET_LOCAL = 7;        // u16 slot
+    static final byte DEFINE_LOCAL = 8;     // u16 slot
+    static final byte GET_GLOBAL = 9;       // u16 constant index of a VM.Global
+    static final byte SET_GLOBAL = 10;      // u16 constant index of a VM.Global
+    static final byte DEFINE_GLOBAL = 11;   // u16 constant index of a VM.Global
+
+    static final byte EQUAL = 12;
+    static final byte NOT_EQUAL = 13;
+    static final byte GREATER = 14;
+    static final byte GREATER_EQUAL = 15;
+    static final byte LESS = 16;
+    static final byte LESS_EQUAL = 17;
+    static final byte ADD = 18;
+    static final byte SUBTRACT = 19;
+    static final byte MULTIPLY = 20;
+    static final byte DIVIDE = 21;
+    static final byte NOT = 22;
+    static final byte NEGATE = 23;
+
+    static final byte PRINT = 24;
+    static final byte JUMP = 25;            // u16 forward offset
+    static final byte JUMP_IF_FALSE = 26;   // u16 forward offset, leaves condition on stack
+    static final byte LOOP = 27;            // u16 backward offset
+
+    static final byte CALL = 28;            // u8 argument count
+    // u16 constant index of a VmFunction, then per upvalue u8 1 if it captures a local
+    // slot of the running call or 0 for an upvalue of the running closure, u16 slot or index
+    static final byte CLOSURE = 29;
+    static final byte RETURN = 30;
+    static final byte GET_UPVALUE = 31;     // u16 upvalue index
+    static final byte SET_UPVALUE = 32;     // u16 upvalue index
+    static final byte CLOSE_LOCALS = 33;    // u16 first slot, u16 count; ends their scope
+    static final byte POP_JUMP_IF_FALSE = 34; // u16 forward offset, pops the condition
+
+    // Binary operators on two operands that need no code of their own, u16 left
+    // and u16 right: a local slot, or OPERAND_CONSTANT | index of a number constant
+    static final byte GREATER_OPERANDS = 35;
+    static final byte GREATER_EQUAL_OPERANDS = 36;
+    static final byte LESS_OPERANDS = 37;
+    static final byte LESS_EQUAL_OPERANDS = 38;
+    static final byte ADD_OPERANDS = 39;
+    static final byte SUBTRACT_OPERANDS = 40;
+    static final byte MULTIPLY_OPERANDS = 41;
+    static final byte DIVIDE_OPERANDS = 42;
+    // Compare two operands as above and jump unless the comparison holds, u16 forward offset last
+    static final byte JUMP_IF_NOT_GREATER = 43;
+    static final byte JUMP_IF_NOT_GREATER_EQUAL = 44;
+    static final byte JUMP_IF_NOT_LESS = 45;
+    static final byte JUMP_IF_NOT_LESS_EQUAL = 46;
+
+    static final int OPERAND_CONSTANT = 0x8000;
+
+    private OpCode() {
+    }
+
+    // Change in stack height, CALL also pops its arguments (see Compiler.visitCallExpr)
+    static int stackEffect(byte op) {
+        switch (op) {
+            case CONSTANT:
+            case NIL:
+            case TRUE:
+            case FALSE:
+            case UNINITIALIZED:
+            case GET_LOCAL:
+            case GET_GLOBAL:
+            case GET_UPVALUE:
+            case CLOSURE:
+            case GREATER_OPERANDS:
+            case GREATER_EQUAL_OPERANDS:
+            case LESS_OPERANDS:
+            case LESS_EQUAL_OPERANDS:
+            case ADD_OPERANDS:
+            case SUBTRACT_OPERANDS:
+            case MULTIPLY_OPERANDS:
+            case DIVIDE_OPERANDS:
+                return 1;
+            case POP:
+            case DEFINE_LOCAL:
+            case DEFINE_GLOBAL:
+            case EQUAL:
+            case NOT_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case PRINT:
+            case RETURN:
+            case POP_JUMP_IF_FALSE:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Optional pass over the trees from Parser.parse(), run once the Resolver has
+checked them. The optimized trees are resolved again, since dropping a
+declaration moves the slots after it.
+
+Folds operators whose operands are literals and drops branches and loops
+that can never run. Anything that would raise a RuntimeError at runtime,
+such as dividing a non-zero number by 0 or adding a number to nil, is left
+alone so the error still happens, on the same line, when the code runs.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            // null means the statement can never run
+            if (result != null) optimized.add(result);
+        }
+        return optimized;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Branches and loop bodies need a statement even when theirs was dropped.
+    // The empty block has no line, which is never reported since it runs without a frame
+    private Stmt optimizeBranch(Stmt stmt) {
+        Stmt result = optimize(stmt);
+        if (result == null) return new Stmt.Block(-1, new ArrayList<>());
+        return result;
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof Expr.Literal;
+    }
+
+    private static Object valueOf(Expr expr) {
+        return ((Expr.Literal) expr).value;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(stmt.line, optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        return new Stmt.Function(stmt.name, stmt.params, optimize(stmt.body));
+    }
+
+    // A literal condition keeps only the branch that would run
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition)) {
+            if (Interpreter.isTruthy(valueOf(condition))) return optimize(stmt.thenBranch);
+            if (stmt.elseBranch != null) return optimize(stmt.elseBranch);
+            return null;
+        }
+
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimizeBranch(stmt.elseBranch);
+        return new Stmt.If(condition, optimizeBranch(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return stmt;
+        return new Stmt.Return(stmt.keyword, optimize(stmt.value));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return stmt;
+        return new Stmt.Var(stmt.name, optimize(stmt.initializer));
+    }
+
+    // A loop whose condition is a falsey literal never runs its body
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (isLiteral(condition) && !Interpreter.isTruthy(valueOf(condition))) return null;
+
+        return new Stmt.While(stmt.keyword, condition, optimizeBranch(stmt.body));
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left) && isLiteral(right)) {
+            Expr folded = foldBinary(expr.operator, valueOf(left), valueOf(right));
+            if (folded != null) return folded;
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // Mirrors Interpreter.binary(), returns null where the interpreter would throw
+    private Expr foldBinary(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case BANG_EQUAL:
+                return new Expr.Literal(!Interpreter.isEqual(left, right));
+            case EQUAL_EQUAL:
+                return new Expr.Literal(Interpreter.isEqual(left, right));
+            case PLUS:
+                if (left instanceof String || right instanceof String) {
+                    if ((left instanceof String || left instanceof Double) &&
+                            (right instanceof String || right instanceof Double)) {
+                        return new Expr.Literal(Interpreter.stringify(left) + Interpreter.stringify(right));
+                    }
+                    return null;
+                }
+                break;
+        }
+
+        if (!(left instanceof Double) || !(right instanceof Double)) return null;
+        double a = (double) left;
+        double b = (double) right;
+
+        switch (operator.type) {
+            case GREATER:
+                return new Expr.Literal(a > b);
+            case GREATER_EQUAL:
+                return new Expr.Literal(a >= b);
+            case LESS:
+                return new Expr.Literal(a < b);
+            case LESS_EQUAL:
+                return new Expr.Literal(a <= b);
+            case MINUS:
+                return new Expr.Literal(a - b);
+            case PLUS:
+                return new Expr.Literal(a + b);
+            case STAR:
+                return new Expr.Literal(a * b);
+            case SLASH:
+                if (b != 0.0) return new Expr.Literal(a / b);
+                if (a == 0.0) return new Expr.Literal(Double.NaN);
+                // Keep the divide by 0 error for runtime
+                return null;
+        }
+        return null;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    // A literal on the left has no side effects, so only the right is left
+    @Override
+    public Expr visitCommaCollectionExpr(Expr.CommaCollection expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (isLiteral(left)) return right;
+        return new Expr.CommaCollection(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr inner = optimize(expr.expression);
+        if (isLiteral(inner)) return inner;
+        return new Expr.Grouping(inner);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    // Short circuits on a literal left operand just like the interpreter does
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(left)) {
+            boolean truthy = Interpreter.isTruthy(valueOf(left));
+            if (expr.operator.type == TokenType.OR) return truthy ? left : right;
+            return truthy ? right : left;
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (isLiteral(right)) {
+            Object value = valueOf(right);
+            if (expr.operator.type == TokenType.BANG) {
+                return new Expr.Literal(!Interpreter.isTruthy(value));
+            }
+            if (expr.operator.type == TokenType.MINUS && value instanceof Double) {
+                return new Expr.Literal(-(double) value);
+            }
+        }
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr condition = optimize(expr.condition);
+        Expr trueLeg = optimize(expr.trueLeg);
+        Expr falseLeg = optimize(expr.falseLeg);
+
+        if (isLiteral(condition)) {
+            return Interpreter.isTruthy(valueOf(condition)) ? trueLeg : falseLeg;
+        }
+        return new Expr.Ternary(condition, trueLeg, falseLeg);
+    }
+}
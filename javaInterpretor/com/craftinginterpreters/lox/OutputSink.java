@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+/*
+Destination of print statements, for the Interpreter and the VM alike.
+
+The Interpreter and the VM flush their sink before reporting a runtime
+error and whenever interpret() returns, so output is never lost or shown
+after the error it led up to.
+ */
+interface OutputSink {
+    // Writes value as stringify() would, then a line separator
+    void print(Object value);
+
+    void flush();
+}
@@ -66,12 +66,22 @@ class Parser {
     private static class ParseError extends RuntimeException {
     }
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenSource tokens;
+    private final ErrorReporter reporter;
     private int loopDepth = 0;
 
-    Parser(List<Token> tokens) {
+    Parser(List<Token> tokens, ErrorReporter reporter) {
+        this(new TokenStream(tokens.iterator()::next), reporter);
+    }
+
+    // Pulls tokens lazily, the scanner never gets more than one token ahead of the parser
+    Parser(Scanner scanner, ErrorReporter reporter) {
+        this(new TokenStream(scanner::nextToken), reporter);
+    }
+
+    Parser(TokenSource tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     //program        → statement* EOF ;
@@ -97,6 +107,7 @@ class Parser {
 
     private Stmt.Function function(String kind) {
         Token name = consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
         if (!check(TokenType.RIGHT_PAREN)) {
             do {
@@ -106,11 +117,18 @@ class Parser {
                 parameters.add(consume(TokenType.IDENTIFIER, "Expect parameter name."));
             } while (match(TokenType.COMMA));
         }
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
 
-        consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        List<Stmt> body = block();
-        return new Stmt.Function(name, parameters, body);
+        expect(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+        // A loop around the declaration does not make 'break' valid inside the body
+        int enclosingLoopDepth = loopDepth;
+        try {
+            loopDepth = 0;
+            List<Stmt> body = block();
+            return new Stmt.Function(name, parameters, body);
+        } finally {
+            loopDepth = enclosingLoopDepth;
+        }
     }
 
     // varDecl → "var" IDENTIFIER ( "=" expression )? ";" ;
@@ -122,7 +140,7 @@ class Parser {
             initializer = expression();
         }
 
-        consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
+        expect(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
         return new Stmt.Var(name, initializer);
     }
 
@@ -132,17 +150,18 @@ class Parser {
         if (match(TokenType.PRINT)) return printStatement();
         if (match(TokenType.FOR)) return forStatement();
         if (match(TokenType.WHILE)) return whileStatement();
-        if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
+        if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(previous().line, block());
         if (match(TokenType.BREAK)) return breakStatement();
+        if (match(TokenType.RETURN)) return returnStatement();
         return expressionStatement();
     }
 
     // if statement   --> ifStmt         → "if" "(" expression ")" statement
     //               ( "else" statement )? ;
     private Stmt ifStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
         Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after if condition");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after if condition");
 
         Stmt thenBranch = statement();
         Stmt elseBranch = null;
@@ -155,15 +174,16 @@ class Parser {
 
     // while statement -->
     private Stmt whileStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
+        Token keyword = previous();
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
         Expr condition = expression();
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after if condition");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after if condition");
 
         try {
             loopDepth++;
             Stmt body = statement();
 
-            return new Stmt.While(condition, body);
+            return new Stmt.While(keyword, condition, body);
         } finally {
             loopDepth--;
         }
@@ -174,7 +194,8 @@ class Parser {
     // forStmt -> "for" "("  (varDecl | exprStmt | ";") expression? ";" expression? ")" statement;
     // for parameters ==> initializer, condition, increment
     private Stmt forStatement() {
-        consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+        Token keyword = previous();
+        expect(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
         Stmt initializer;
         if (match(TokenType.SEMICOLON)) {
             initializer = null;
@@ -188,29 +209,29 @@ class Parser {
         if (!check(TokenType.SEMICOLON)) {
             condition = expression();
         }
-        consume(TokenType.SEMICOLON, "Expect ';' after loop condition");
+        expect(TokenType.SEMICOLON, "Expect ';' after loop condition");
 
         Expr increment = null;
         if (!check(TokenType.SEMICOLON)) {
             increment = expression();
         }
-        consume(TokenType.RIGHT_PAREN, "Expect ')' after for loop parameters");
+        expect(TokenType.RIGHT_PAREN, "Expect ')' after for loop parameters");
 
         try {
             loopDepth++;
             Stmt body = statement();
 
             if (increment != null) {
-                body = new Stmt.Block(
+                body = new Stmt.Block(keyword.line,
                         Arrays.asList(body, new Stmt.Expression(increment))
                 );
             }
 
             if (condition == null) condition = new Expr.Literal(true);
-            body = new Stmt.While(condition, body);
+            body = new Stmt.While(keyword, condition, body);
 
             if (initializer != null) {
-                body = new Stmt.Block(Arrays.asList(initializer, body));
+                body = new Stmt.Block(keyword.line, Arrays.asList(initializer, body));
             }
             return body;
         } finally {
@@ -221,7 +242,7 @@ class Parser {
     // printStmt      → "print" expression ";" ;
     private Stmt printStatement() {
         Expr value = expression();
-        consume(TokenType.SEMICOLON, "Expect ';' after value.");
+        expect(TokenType.SEMICOLON, "Expect ';' after value.");
         return new Stmt.Print(value);
     }
 
@@ -231,14 +252,26 @@ class Parser {
             error(previous(), "Must be inside a loop to use 'break'.");
         }
 
-        consume(TokenType.SEMICOLON, "Expect ';' after 'break'.");
+        expect(TokenType.SEMICOLON, "Expect ';' after 'break'.");
         return new Stmt.Break();
     }
 
+    // returnStmt     → "return" expression? ";" ;
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        Expr value = null;
+        if (!check(TokenType.SEMICOLON)) {
+            value = expression();
+        }
+
+        expect(TokenType.SEMICOLON, "Expect ';' after return value.");
+        return new Stmt.Return(keyword, value);
+    }
+
     //  exprStmt       → expression ";" ;
     private Stmt expressionStatement() {
         Expr value = expression();
-        consume(TokenType.SEMICOLON, "Expect ';' after value.");
+        expect(TokenType.SEMICOLON, "Expect ';' after value.");
         return new Stmt.Expression(value);
     }
 
@@ -248,158 +281,174 @@ class Parser {
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
             statements.add(declaration());
         }
-        consume(TokenType.RIGHT_BRACE, "Expect '}' after block.");
+        expect(TokenType.RIGHT_BRACE, "Expect '}' after block.");
         return statements;
     }
 
-    // expression → comma ;
-    private Expr expression() {
-        return comma();
+    /*
+    Expressions are parsed by precedence climbing instead of one method per
+    grammar level. Each level above is a binding power, lowest first; a token's
+    entry in infixPrecedence is how tightly it binds to the operand before it.
+    parsePrecedence(p) parses one prefix expression, then folds in every infix
+    operator binding at least as tightly as p, which builds the same trees as
+    the descent chain in the grammar at the top of this file.
+     */
+    private static final int NONE = 0;
+    private static final int COMMA = 1;       // ,
+    private static final int ASSIGNMENT = 2;  // =
+    private static final int CONDITIONAL = 3; // ?:
+    private static final int OR = 4;          // or
+    private static final int AND = 5;         // and
+    private static final int EQUALITY = 6;    // == !=
+    private static final int COMPARISON = 7;  // < > <= >=
+    private static final int TERM = 8;        // + -
+    private static final int FACTOR = 9;      // * /
+    private static final int UNARY = 10;      // ! -
+    private static final int CALL = 11;       // ()
+
+    private static final int[] infixPrecedence = new int[TokenType.values().length];
+
+    static {
+        infixPrecedence[TokenType.COMMA.ordinal()] = COMMA;
+        infixPrecedence[TokenType.EQUAL.ordinal()] = ASSIGNMENT;
+        infixPrecedence[TokenType.QUESTION.ordinal()] = CONDITIONAL;
+        infixPrecedence[TokenType.OR.ordinal()] = OR;
+        infixPrecedence[TokenType.AND.ordinal()] = AND;
+        infixPrecedence[TokenType.BANG_EQUAL.ordinal()] = EQUALITY;
+        infixPrecedence[TokenType.EQUAL_EQUAL.ordinal()] = EQUALITY;
+        infixPrecedence[TokenType.GREATER.ordinal()] = COMPARISON;
+        infixPrecedence[TokenType.GREATER_EQUAL.ordinal()] = COMPARISON;
+        infixPrecedence[TokenType.LESS.ordinal()] = COMPARISON;
+        infixPrecedence[TokenType.LESS_EQUAL.ordinal()] = COMPARISON;
+        infixPrecedence[TokenType.MINUS.ordinal()] = TERM;
+        infixPrecedence[TokenType.PLUS.ordinal()] = TERM;
+        infixPrecedence[TokenType.SLASH.ordinal()] = FACTOR;
+        infixPrecedence[TokenType.STAR.ordinal()] = FACTOR;
+        infixPrecedence[TokenType.LEFT_PAREN.ordinal()] = CALL;
     }
 
-    //Comma → assignment ( "," assignment )* ;
-    private Expr comma() {
-        Expr expr = assignment();
-        while (match(TokenType.COMMA)) {
-            Token operator = previous();
-            Expr right = assignment();
-            expr = new Expr.CommaCollection(expr, operator, right);
-        }
-        return expr;
+    // expression → comma ;
+    private Expr expression() {
+        return parsePrecedence(COMMA);
     }
 
-    // assignment → IDENTIFIER "=" assignment | conditional ;
+    // assignment, not expression, wherever a comma separates things
     private Expr assignment() {
-        Expr expr = conditional();
-
-        if (match(TokenType.EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
-
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
-            }
-
-            error(equals, "Invalid assignment target.");
-        }
-
-        return expr;
+        return parsePrecedence(ASSIGNMENT);
     }
 
-    // conditional -- Utilizes right-associativity
-    // conditional → or ( "?" expression ":" conditional )? ;
-    // conditional→ or ( "?" or ":" or )? ;
-    //           | logic_or ;
-
-    private Expr conditional() {
-        Expr expr = or();
+    private Expr parsePrecedence(int precedence) {
+        Expr expr = prefix();
 
-        if (match(TokenType.QUESTION)) {
-            Expr ifBranch = or();
-            consume(TokenType.COLON, "Expect ':' after conditional expression ?");
-            Expr elseBranch = conditional();
-            expr = new Expr.Ternary(expr, ifBranch, elseBranch);
-        }
-
-        return expr;
-    }
-
-    private Expr or() {
-        Expr expr = and();
-
-        while (match(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and() {
-        Expr expr = equality();
-
-        while (match(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    // equality   → comparison ( ( "!=" | "==" ) comparison )* ;
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr comparison() {
-        Expr expr = term();
+        while (true) {
+            int infix = infixPrecedence[tokens.peekType().ordinal()];
+            if (infix == NONE || infix < precedence) return expr;
 
-        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+            advance();
+            expr = infix(expr, infix);
         }
-
-        return expr;
     }
 
-    private Expr term() {
-        Expr expr = factor();
-
-        while (match(TokenType.MINUS, TokenType.PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr factor() {
-        Expr expr = unary();
+    // unary, primary and the error productions, everything that can start an expression
+    private Expr prefix() {
+        TokenType type = tokens.peekType();
+        switch (type) {
+            case FALSE:
+                advance();
+                return new Expr.Literal(false);
+            case TRUE:
+                advance();
+                return new Expr.Literal(true);
+            case NIL:
+                advance();
+                return new Expr.Literal(null);
+            case NUMBER:
+            case STRING:
+                advance();
+                return new Expr.Literal(previous().literal);
+            case IDENTIFIER:
+                advance();
+                return new Expr.Variable(previous());
+            case LEFT_PAREN: {
+                advance();
+                Expr expr = expression();
+                expect(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                return new Expr.Grouping(expr);
+            }
+            case BANG:
+            case MINUS: {
+                advance();
+                Token operator = previous();
+                Expr right = parsePrecedence(UNARY);
+                return new Expr.Unary(operator, right);
+            }
 
-        while (match(TokenType.SLASH, TokenType.STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+            //     Error productions
+            //   | ( "!=" | "==" ) equality
+            //        | ( ">" | ">=" | "<" | "<=" ) comparison
+            //        | ( "+" ) term
+            //        | ( "/" | "*" ) factor ;
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+            case PLUS:
+            case SLASH:
+            case STAR:
+                advance();
+                error(previous(), "Missing left-hand operand.");
+                parsePrecedence(infixPrecedence[type.ordinal()]);
+                return null;
         }
 
-        return expr;
+        throw error(peek(), "Expect expression.");
     }
 
-    private Expr unary() {
-        if (match(TokenType.BANG, TokenType.MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
+    // Operator has just been consumed, left is everything before it
+    private Expr infix(Expr left, int precedence) {
+        switch (tokens.previousType()) {
+            case EQUAL: {
+                // Right-associative, so a = b = c assigns b first
+                Token equals = previous();
+                Expr value = assignment();
 
-        return primary();
-    }
+                if (left instanceof Expr.Variable) {
+                    Token name = ((Expr.Variable) left).name;
+                    return new Expr.Assign(name, value);
+                }
 
-    // call       → primary ( "(" arguments? ")" )* ;
-    // arguments is multiple expressions
-    private Expr call() {
-        Expr expr = primary();
-        while (true) {
-            if (match(TokenType.LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else {
-                break;
+                error(equals, "Invalid assignment target.");
+                return left;
+            }
+            case QUESTION: {
+                // conditional→ or ( "?" or ":" conditional )? ;
+                Expr ifBranch = parsePrecedence(OR);
+                expect(TokenType.COLON, "Expect ':' after conditional expression ?");
+                Expr elseBranch = parsePrecedence(CONDITIONAL);
+                return new Expr.Ternary(left, ifBranch, elseBranch);
+            }
+            case LEFT_PAREN:
+                return finishCall(left);
+            case COMMA: {
+                Token operator = previous();
+                Expr right = assignment();
+                return new Expr.CommaCollection(left, operator, right);
+            }
+            case OR:
+            case AND: {
+                Token operator = previous();
+                Expr right = parsePrecedence(precedence + 1);
+                return new Expr.Logical(left, operator, right);
+            }
+            default: {
+                // Binary operators are left-associative, the right operand binds one level tighter
+                Token operator = previous();
+                Expr right = parsePrecedence(precedence + 1);
+                return new Expr.Binary(left, operator, right);
             }
         }
-        return expr;
     }
 
     // finishCall
@@ -410,7 +459,8 @@ class Parser {
                 if (arguments.size() >= 255) {
                     error(peek(), "Can't have more than 255 arguments.");
                 }
-                arguments.add(expression());
+                // assignment, not expression, so the comma separates arguments
+                arguments.add(assignment());
             } while (match(TokenType.COMMA));
         }
 
@@ -418,78 +468,37 @@ class Parser {
         return new Expr.Call(callee, paren, arguments);
     }
 
-
-    private Expr primary() {
-        if (match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (match(TokenType.NIL)) return new Expr.Literal(null);
-
-        if (match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(previous().literal);
-        }
-
-        if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
-        }
-
-        if (match(TokenType.LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-
-        //     Error productions
-        //   | ( "!=" | "==" ) equality
-        //        | ( ">" | ">=" | "<" | "<=" ) comparison
-        //        | ( "+" ) term
-        //        | ( "/" | "*" ) factor ;
-        if (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            error(previous(), "Missing left-hand operand.");
-            equality();
-            return null;
-        }
-
-        if (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            error(previous(), "Missing left-hand operand.");
-            comparison();
-            return null;
-        }
-
-        if (match(TokenType.PLUS)) {
-            error(previous(), "Missing left-hand operand.");
-            term();
-            return null;
-        }
-
-        if (match(TokenType.SLASH, TokenType.STAR)) {
-            error(previous(), "Missing left-hand operand.");
-            factor();
-            return null;
+    // Checks if current token is of type wanted, consuming it if so
+    private boolean match(TokenType type) {
+        if (check(type)) {
+            advance();
+            return true;
         }
 
-        throw error(peek(), "Expect expression.");
+        return false;
     }
 
-    // Checks if current token is of types wanted
-    private boolean match(TokenType... types) {
-        for (TokenType type : types) {
-            if (check(type)) {
-                advance();
-                return true;
-            }
+    private Token consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return previous();
         }
 
-        return false;
+        throw error(peek(), message);
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+    // Like consume, for tokens the tree does not keep
+    private void expect(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -498,9 +507,9 @@ class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
+            if (tokens.previousType() == TokenType.SEMICOLON) return;
 
-            switch (peek().type) {
+            switch (tokens.peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -520,28 +529,27 @@ class Parser {
     // Checks if this current token is of type wanted
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
-    // Consumes current token and returns it
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    // Consumes current token
+    private void advance() {
+        tokens.advance();
     }
 
     // Check if at end of code
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.peekType() == TokenType.EOF;
     }
 
     // check current token w/o consuming it
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     // checks the previous token
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
 }
@@ -0,0 +1,25 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/*
+Unbuffered sink, each print is a println() on the stream. Used by the REPL,
+where every line has to show up as soon as it is printed, and by default.
+ */
+class PrintStreamSink implements OutputSink {
+    private final PrintStream out;
+
+    PrintStreamSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void print(Object value) {
+        out.println(Interpreter.stringify(value));
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,220 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Profile of Lox functions run by the Interpreter, turned on with --profile.
+
+Calls are counted and timed exactly: Interpreter.callFunction() calls enter()
+and exit() around every call, and inclusive/self time are kept both per
+function (the flat report) and per call path (the call tree). A tail call
+replaces the running call in callFunction()'s trampoline and calls
+tailCall(), so the callee shows up as called by the caller's caller.
+
+Hot lines are sampled instead: the Interpreter stores the statement it is
+about to run in a plain field, and a daemon thread reads that field every
+SAMPLE_INTERVAL_MILLIS. The field is written without synchronization, the
+sampler may read a slightly stale statement, which is fine for a sample.
+
+Interpreter.profiler is null unless profiling, so the cost when disabled is
+a null check per call and per statement.
+ */
+class Profiler {
+    private static final long SAMPLE_INTERVAL_MILLIS = 1;
+    private static final int HOT_LINES = 10;
+
+    // Totals for one function, over every path it was called from
+    private static class FunctionStats {
+        final Stmt.Function declaration;
+        long calls = 0;
+        long inclusiveNanos = 0;
+        long selfNanos = 0;
+        int active = 0; // activations on the stack, recursion only adds inclusive time once
+
+        FunctionStats(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+    }
+
+    // One call path in the call tree
+    private static class Node {
+        final FunctionStats function; // null for the root, top level code
+        final Map<Stmt.Function, Node> children = new LinkedHashMap<>();
+        Node lastChild = null; // most call sites call the same function again, skips the map lookup
+        long calls = 0;
+        long inclusiveNanos = 0;
+        long selfNanos = 0;
+
+        Node(FunctionStats function) {
+            this.function = function;
+        }
+    }
+
+    private final Map<Stmt.Function, FunctionStats> functions = new HashMap<>();
+    private final Node root = new Node(null);
+    private final long startNanos = System.nanoTime();
+
+    // Calls in progress, innermost last
+    private Node[] nodes = new Node[64];
+    private long[] starts = new long[64];
+    private long[] childNanos = new long[64];
+    private int depth = 0;
+
+    // Written by the Interpreter, read by the sampler thread
+    Stmt statement = null;
+    private final Map<Stmt, int[]> samples = new IdentityHashMap<>();
+    private int sampleCount = 0;
+    private Thread sampler = null;
+    private volatile boolean sampling = false;
+
+    void start() {
+        sampling = true;
+        sampler = new Thread(this::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    private void sample() {
+        while (sampling) {
+            Stmt current = statement;
+            if (current != null) {
+                samples.computeIfAbsent(current, stmt -> new int[1])[0]++;
+                sampleCount++;
+            }
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            } catch (InterruptedException error) {
+                return;
+            }
+        }
+    }
+
+    void enter(Stmt.Function declaration) {
+        Node parent = depth == 0 ? root : nodes[depth - 1];
+        push(parent, declaration);
+    }
+
+    // The running call is replaced by declaration, it takes the same parent
+    void tailCall(Stmt.Function declaration) {
+        exit();
+        enter(declaration);
+    }
+
+    void exit() {
+        long now = System.nanoTime();
+        depth--;
+        Node node = nodes[depth];
+        long elapsed = now - starts[depth];
+        long self = elapsed - childNanos[depth];
+        nodes[depth] = null;
+
+        node.inclusiveNanos += elapsed;
+        node.selfNanos += self;
+        FunctionStats function = node.function;
+        function.selfNanos += self;
+        if (--function.active == 0) function.inclusiveNanos += elapsed;
+
+        if (depth > 0) childNanos[depth - 1] += elapsed;
+    }
+
+    private void push(Node parent, Stmt.Function declaration) {
+        Node node = parent.lastChild;
+        if (node == null || node.function.declaration != declaration) {
+            node = parent.children.get(declaration);
+            if (node == null) {
+                FunctionStats function = functions.computeIfAbsent(declaration, FunctionStats::new);
+                node = new Node(function);
+                parent.children.put(declaration, node);
+            }
+            parent.lastChild = node;
+        }
+        node.calls++;
+        node.function.calls++;
+        node.function.active++;
+
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            starts = Arrays.copyOf(starts, depth * 2);
+            childNanos = Arrays.copyOf(childNanos, depth * 2);
+        }
+        nodes[depth] = node;
+        childNanos[depth] = 0;
+        starts[depth] = System.nanoTime();
+        depth++;
+    }
+
+    // Stops sampling and prints the flat profile, hot lines and call tree
+    void report(PrintStream out) {
+        sampling = false;
+        if (sampler != null) {
+            try {
+                sampler.join();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long total = System.nanoTime() - startNanos;
+
+        out.println("== Profile: " + millis(total) + " ms total ==");
+        out.println();
+        out.println("Flat profile:");
+        out.println(String.format("%10s %12s %12s %7s  %s", "calls", "incl ms", "self ms", "self%", "function"));
+        List<FunctionStats> flat = new ArrayList<>(functions.values());
+        flat.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+        for (FunctionStats function : flat) {
+            out.println(String.format("%10d %12s %12s %6.1f%%  %s", function.calls,
+                    millis(function.inclusiveNanos), millis(function.selfNanos),
+                    percent(function.selfNanos, total), name(function)));
+        }
+
+        out.println();
+        out.println("Hot lines (" + sampleCount + " samples):");
+        Map<Integer, Integer> lines = new HashMap<>();
+        for (Map.Entry<Stmt, int[]> entry : samples.entrySet()) {
+            lines.merge(LineFinder.lineOf(entry.getKey()), entry.getValue()[0], Integer::sum);
+        }
+        List<Map.Entry<Integer, Integer>> hot = new ArrayList<>(lines.entrySet());
+        hot.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        for (Map.Entry<Integer, Integer> line : hot.subList(0, Math.min(HOT_LINES, hot.size()))) {
+            String where = line.getKey() == -1 ? "?" : String.valueOf(line.getKey());
+            out.println(String.format("%10d %6.1f%%  line %s", line.getValue(),
+                    percent(line.getValue(), sampleCount), where));
+        }
+
+        out.println();
+        out.println("Call tree:");
+        out.println(String.format("%10s %12s %12s  %s", "calls", "incl ms", "self ms", "function"));
+        for (Node child : root.children.values()) {
+            printTree(out, child, 0);
+        }
+    }
+
+    private void printTree(PrintStream out, Node node, int indent) {
+        out.println(String.format("%10d %12s %12s  %s%s", node.calls, millis(node.inclusiveNanos),
+                millis(node.selfNanos), "  ".repeat(indent), name(node.function)));
+        for (Node child : node.children.values()) {
+            printTree(out, child, indent + 1);
+        }
+    }
+
+    private static String name(FunctionStats function) {
+        Token name = function.declaration.name;
+        return name.lexeme + " (line " + name.line + ")";
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    private static double percent(long part, long whole) {
+        if (whole == 0) return 0;
+        return 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+Parsed and resolved script, made by LoxEngine.compile() and run by any number
+of engines, on any number of threads at once (see LoxEngine).
+
+globalNames is the Resolver's name table: the trees number globals by their
+index in it, and each engine links it to its own globals before running.
+
+Bytecode for the VM is compiled from the trees the first time the program
+runs on a VM, then kept for every later run.
+ */
+public final class Program {
+    final List<Stmt> statements;
+    final String[] globalNames;
+    private volatile VmFunction script = null;
+
+    Program(List<Stmt> statements, String[] globalNames) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.globalNames = globalNames;
+    }
+
+    // Null if the Compiler reported an error, nothing is kept then
+    VmFunction script(ErrorReporter reporter) {
+        VmFunction compiled = script;
+        if (compiled == null) {
+            int errors = reporter.errors;
+            compiled = new Compiler(reporter).compile(statements);
+            if (reporter.errors != errors) return null;
+            // Engines racing here each compile the same bytecode, whichever is kept is fine
+            script = compiled;
+        }
+        return compiled;
+    }
+}
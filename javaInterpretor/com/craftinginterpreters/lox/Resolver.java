@@ -0,0 +1,280 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Static pass run between Parser.parse() and Interpreter.interpret().
+
+Every local variable is bound to a (depth, slot) pair:
+    depth → number of environments to walk up from the current one
+    slot  → index of the variable inside that environment, in declaration order
+Anything not found in a local scope is left at depth -1 and looked up in globals
+by the number of its name in this program's GlobalNames, see globalNames().
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // A declared local; defined becomes true once its initializer has been resolved
+    private static class Local {
+        final int scope;
+        final int slot;
+        boolean defined = false;
+
+        Local(int scope, int slot) {
+            this.scope = scope;
+            this.slot = slot;
+        }
+    }
+
+    private enum FunctionType {
+        NONE,
+        FUNCTION
+    }
+
+    private final ErrorReporter reporter;
+    private final List<Map<String, Local>> scopes = new ArrayList<>();
+    private final GlobalNames globals = new GlobalNames();
+    private FunctionType currentFunction = FunctionType.NONE;
+    // Slots given out so far in each scope, becomes the Frame size
+    private int lastScopeSize = 0;
+
+    Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    // Name table of every global resolved so far, for the Program
+    String[] globalNames() {
+        return globals.names();
+    }
+
+    private void resolve(Stmt stmt) {
+        // Parser returns null for statements it could not recover
+        if (stmt != null) stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        // Error productions in the Parser leave null operands behind
+        if (expr != null) expr.accept(this);
+    }
+
+    // Function body shares the scope of its parameters, matching LoxFunction.call
+    private void resolveFunction(Stmt.Function function) {
+        FunctionType enclosingFunction = currentFunction;
+        currentFunction = FunctionType.FUNCTION;
+
+        beginScope();
+        for (Token param : function.params) {
+            declare(param);
+            define(param);
+        }
+        resolve(function.body);
+        endScope();
+        function.frameSize = lastScopeSize;
+        currentFunction = enclosingFunction;
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        lastScopeSize = scopes.remove(scopes.size() - 1).size();
+    }
+
+    // Adds variable to innermost scope, returns its slot or -1 when it is a global
+    private int declare(Token name) {
+        if (scopes.isEmpty()) return -1;
+
+        Map<String, Local> scope = scopes.get(scopes.size() - 1);
+        if (scope.containsKey(name.lexeme)) {
+            reporter.error(name, "Already a variable with this name in this scope.");
+            return scope.get(name.lexeme).slot;
+        }
+        Local local = new Local(scopes.size() - 1, scope.size());
+        scope.put(name.lexeme, local);
+        return local.slot;
+    }
+
+    private void define(Token name) {
+        if (scopes.isEmpty()) return;
+
+        Local local = scopes.get(scopes.size() - 1).get(name.lexeme);
+        if (local != null) local.defined = true;
+    }
+
+    // Walks scopes innermost first, returns null when the name must be global
+    private Local lookup(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Local local = scopes.get(i).get(name.lexeme);
+            if (local != null) return local;
+        }
+        return null;
+    }
+
+    private int depthOf(Local local) {
+        return scopes.size() - 1 - local.scope;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        resolve(stmt.statements);
+        endScope();
+        stmt.frameSize = lastScopeSize;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    // Name is defined before the body so functions can recurse
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        stmt.slot = declare(stmt.name);
+        if (stmt.slot == -1) stmt.global = globals.numberOf(stmt.name.lexeme);
+        define(stmt.name);
+
+        resolveFunction(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.thenBranch);
+        resolve(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (currentFunction == FunctionType.NONE) {
+            reporter.error(stmt.keyword, "Can't return from top-level code.");
+        }
+
+        stmt.tailCall = stmt.value instanceof Expr.Call;
+        resolve(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        stmt.slot = declare(stmt.name);
+        if (stmt.slot == -1) stmt.global = globals.numberOf(stmt.name.lexeme);
+        resolve(stmt.initializer);
+        define(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+
+        Local local = lookup(expr.name);
+        if (local != null) {
+            expr.depth = depthOf(local);
+            expr.slot = local.slot;
+        } else {
+            expr.global = globals.numberOf(expr.name.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCommaCollectionExpr(Expr.CommaCollection expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        Local local = lookup(expr.name);
+        if (local != null) {
+            if (!local.defined) {
+                reporter.error(expr.name, "Can't read local variable in its own initializer.");
+            }
+            expr.depth = depthOf(local);
+            expr.slot = local.slot;
+        } else {
+            expr.global = globals.numberOf(expr.name.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        resolve(expr.condition);
+        resolve(expr.trueLeg);
+        resolve(expr.falseLeg);
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+/*
+Unwinds a 'return' to the LoxFunction.call that is running the function.
+
+Each Interpreter keeps a single instance and refills it, and the stack trace
+is never captured, so returning costs neither an allocation nor a
+fillInStackTrace() walk.
+
+A tail call travels the same way: instead of a value it carries the function
+to run next and its already filled frame, and LoxFunction.call loops on it.
+ */
+class Return extends RuntimeException {
+    private Object value;
+    private LoxFunction tailFunction;
+    private Frame tailFrame;
+
+    Return() {
+        super(null, null, false, false);
+    }
+
+    Return with(Object value) {
+        this.value = value;
+        this.tailFunction = null;
+        return this;
+    }
+
+    Return tailCall(LoxFunction function, Frame frame) {
+        this.value = null;
+        this.tailFunction = function;
+        this.tailFrame = frame;
+        return this;
+    }
+
+    boolean isTailCall() {
+        return tailFunction != null;
+    }
+
+    LoxFunction tailFunction() {
+        return tailFunction;
+    }
+
+    Frame takeTailFrame() {
+        Frame frame = tailFrame;
+        tailFunction = null;
+        tailFrame = null;
+        return frame;
+    }
+
+    // Hands the value to the caller and drops the reference
+    Object take() {
+        Object result = value;
+        value = null;
+        return result;
+    }
+}
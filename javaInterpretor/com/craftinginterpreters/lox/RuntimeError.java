@@ -0,0 +1,10 @@
+package com.craftinginterpreters.lox;
+
+class RuntimeError extends RuntimeException {
+    final Token token;
+
+    RuntimeError(Token token, String message) {
+        super(message);
+        this.token = token;
+    }
+}
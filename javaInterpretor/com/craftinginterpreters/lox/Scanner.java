@@ -1,54 +1,172 @@
 package com.craftinginterpreters.lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
+/*
+Pull based scanner, nextToken() scans only as far as the next token.
+
+Source text comes either from a String, held whole, or from a Reader that is
+read through a small window: characters before the start of the current
+lexeme are discarded when the window is refilled, so memory stays
+proportional to the longest lexeme rather than to the file.
+ */
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private static final int WINDOW_SIZE = 8192;
+
+    private final Reader reader; // null when the whole source is already in buffer
+    private final ErrorReporter reporter;
+    private char[] buffer;
+    private int limit; // number of valid chars in buffer
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    private Token next = null; // token produced by the last scanToken() call
+    private TokenBuffer compact = null; // set while scanCompact() runs, tokens go here instead
+
+    Scanner(String source, ErrorReporter reporter) {
+        this.reader = null;
+        this.reporter = reporter;
+        this.buffer = source.toCharArray();
+        this.limit = buffer.length;
+    }
 
-    Scanner(String source) {
-        this.source = source;
+    Scanner(Reader reader, ErrorReporter reporter) {
+        this.reader = reader;
+        this.reporter = reporter;
+        this.buffer = new char[WINDOW_SIZE];
+        this.limit = 0;
+    }
+
+    // Decodes the channel as it is read, nothing is loaded up front. Bytes that are not valid in
+    // charset become U+FFFD, as they do in new String(bytes, charset), instead of failing the read
+    Scanner(ReadableByteChannel channel, Charset charset, ErrorReporter reporter) {
+        this(Channels.newReader(channel, charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1), reporter);
     }
 
     List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    // Scans the whole source into a TokenBuffer, no Token or lexeme is created along the way
+    TokenBuffer scanCompact() {
+        if (reader != null) {
+            throw new IllegalStateException("Compact scanning needs the whole source in memory.");
+        }
+
+        compact = new TokenBuffer(buffer);
         while (!isAtEnd()) {
-            // We are at beginning of the lexeme
             start = current;
             scanToken();
         }
+        compact.add(TokenType.EOF, current, 0, line);
 
-        tokens.add(new Token(TokenType.EOF, "", null, line));
+        TokenBuffer tokens = compact;
+        compact = null;
         return tokens;
     }
 
+    // Scans until one token is produced, EOF is returned again once the source is used up
+    Token nextToken() {
+        while (next == null) {
+            if (isAtEnd()) return new Token(TokenType.EOF, "", null, line);
+
+            // We are at beginning of the lexeme
+            start = current;
+            scanToken();
+        }
+
+        Token token = next;
+        next = null;
+        return token;
+    }
+
+    // Makes sure at least count chars from current on are in the buffer,
+    // returns false when the source ends first
+    private boolean fill(int count) {
+        if (current + count <= limit) return true;
+        if (reader == null) return false;
+
+        // Keep only the lexeme being scanned
+        int kept = limit - start;
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, kept);
+            current -= start;
+            start = 0;
+            limit = kept;
+        }
+        if (current + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, current + count));
+        }
+
+        try {
+            while (current + count > limit) {
+                int read = reader.read(buffer, limit, buffer.length - limit);
+                if (read == -1) return false;
+                limit += read;
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return true;
+    }
+
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !fill(1);
     }
 
     private char advance() {
-        return source.charAt(current++);
+        fill(1);
+        return buffer[current++];
+    }
+
+    private String lexeme(int from, int to) {
+        return new String(buffer, from, to - from);
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
+        if (compact != null) {
+            compact.add(type, start, current - start, line);
+            return;
+        }
+        String text = fixedLexeme(type);
+        if (text == null) text = lexeme(start, current);
+        next = new Token(type, text, literal(type, text), line);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    // Value of a STRING or NUMBER lexeme, null for every other type
+    static Object literal(TokenType type, String text) {
+        switch (type) {
+            case STRING:
+                // Trim the surrounding quotes.
+                return text.substring(1, text.length() - 1);
+            case NUMBER:
+                return Double.parseDouble(text);
+        }
+        return null;
     }
 
     // Looks for character ahead of current scan,
     // Similar to conditional advanced
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (buffer[current] != expected) return false;
 
         current++;
         return true;
@@ -57,12 +175,12 @@ public class Scanner {
     // Similar to advance, but does not consume char - looks ahead
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return buffer[current];
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!fill(2)) return '\0';
+        return buffer[current + 1];
     }
 
     // Scans each individual char and create token
@@ -120,8 +238,11 @@ public class Scanner {
             case '/':
                 if (match('/')) {
                     // A comment goes until the end of the line.
-                    // This does not add anything to token
-                    while (peek() != '\n' && !isAtEnd()) advance();
+                    // This does not add anything to token, so the window need not keep it
+                    while (peek() != '\n' && !isAtEnd()) {
+                        advance();
+                        start = current;
+                    }
                 } else if (match('*')) {
                     blockComments();
                 } else {
@@ -150,7 +271,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -163,16 +284,14 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         // The closing ".
         advance();
 
-        // Trim the surrounding quotes.
-        String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        addToken(TokenType.STRING);
     }
 
     private void number() {
@@ -183,17 +302,76 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
-
+        addToken(TokenType.NUMBER);
     }
 
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENTIFIER;
-        addToken(type);
+        addToken(identifierType());
+    }
+
+    // Keyword check straight on the chars, switching on the first letter (and the second
+    // where several keywords share it) so only true identifiers get a lexeme String
+    private TokenType identifierType() {
+        switch (buffer[start]) {
+            case 'a':
+                return checkKeyword(1, "nd", TokenType.AND);
+            case 'b':
+                return checkKeyword(1, "reak", TokenType.BREAK);
+            case 'c':
+                return checkKeyword(1, "lass", TokenType.CLASS);
+            case 'e':
+                return checkKeyword(1, "lse", TokenType.ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (buffer[start + 1]) {
+                        case 'a':
+                            return checkKeyword(2, "lse", TokenType.FALSE);
+                        case 'o':
+                            return checkKeyword(2, "r", TokenType.FOR);
+                        case 'u':
+                            return checkKeyword(2, "n", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i':
+                return checkKeyword(1, "f", TokenType.IF);
+            case 'n':
+                return checkKeyword(1, "il", TokenType.NIL);
+            case 'o':
+                return checkKeyword(1, "r", TokenType.OR);
+            case 'p':
+                return checkKeyword(1, "rint", TokenType.PRINT);
+            case 'r':
+                return checkKeyword(1, "eturn", TokenType.RETURN);
+            case 's':
+                return checkKeyword(1, "uper", TokenType.SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (buffer[start + 1]) {
+                        case 'h':
+                            return checkKeyword(2, "is", TokenType.THIS);
+                        case 'r':
+                            return checkKeyword(2, "ue", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v':
+                return checkKeyword(1, "ar", TokenType.VAR);
+            case 'w':
+                return checkKeyword(1, "hile", TokenType.WHILE);
+        }
+        return TokenType.IDENTIFIER;
+    }
+
+    // Matches the rest of the lexeme, from offset on, against the rest of a keyword
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length()) return TokenType.IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++) {
+            if (buffer[start + offset + i] != rest.charAt(i)) return TokenType.IDENTIFIER;
+        }
+        return type;
     }
 
     private boolean isDigit(char c) {
@@ -215,10 +393,11 @@ public class Scanner {
         while (true) {
             // returns error if the comment is unclosed
             if (isAtEnd()) {
-                Lox.error(line, "Unclosed Block Comment.");
+                reporter.error(line, "Unclosed Block Comment.");
                 return;
             }
             char c = advance();
+            start = current; // comments are dropped, no need to keep them in the window
             if (c == '\n') line++;
             else if (c == '*' && peek() == '/') {
                 advance(); // consumes '/';
@@ -232,27 +411,107 @@ public class Scanner {
         }
     }
 
-    private static final Map<String, TokenType> keywords;
+    // Lexeme shared by every token of a type that is always spelled the same, null otherwise
+    private static final String[] fixedLexemes = new String[TokenType.values().length];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("and", TokenType.AND);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("if", TokenType.IF);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("break", TokenType.BREAK);
+        for (TokenType type : TokenType.values()) {
+            fixedLexemes[type.ordinal()] = spelling(type);
+        }
+    }
+
+    private static String spelling(TokenType type) {
+        switch (type) {
+            case LEFT_PAREN:
+                return "(";
+            case RIGHT_PAREN:
+                return ")";
+            case LEFT_BRACE:
+                return "{";
+            case RIGHT_BRACE:
+                return "}";
+            case COMMA:
+                return ",";
+            case DOT:
+                return ".";
+            case MINUS:
+                return "-";
+            case PLUS:
+                return "+";
+            case SEMICOLON:
+                return ";";
+            case SLASH:
+                return "/";
+            case STAR:
+                return "*";
+            case QUESTION:
+                return "?";
+            case COLON:
+                return ":";
+            case BANG:
+                return "!";
+            case BANG_EQUAL:
+                return "!=";
+            case EQUAL:
+                return "=";
+            case EQUAL_EQUAL:
+                return "==";
+            case GREATER:
+                return ">";
+            case GREATER_EQUAL:
+                return ">=";
+            case LESS:
+                return "<";
+            case LESS_EQUAL:
+                return "<=";
+            case MINUS_MINUS:
+                return "--";
+            case PLUS_PLUS:
+                return "++";
+            case AND:
+                return "and";
+            case CLASS:
+                return "class";
+            case ELSE:
+                return "else";
+            case FALSE:
+                return "false";
+            case FUN:
+                return "fun";
+            case FOR:
+                return "for";
+            case IF:
+                return "if";
+            case NIL:
+                return "nil";
+            case OR:
+                return "or";
+            case PRINT:
+                return "print";
+            case RETURN:
+                return "return";
+            case SUPER:
+                return "super";
+            case THIS:
+                return "this";
+            case TRUE:
+                return "true";
+            case VAR:
+                return "var";
+            case WHILE:
+                return "while";
+            case BREAK:
+                return "break";
+            case EOF:
+                return "";
+            default:
+                // IDENTIFIER, STRING and NUMBER are spelled by the source
+                return null;
+        }
+    }
+
+    static String fixedLexeme(TokenType type) {
+        return fixedLexemes[type.ordinal()];
     }
 
 
@@ -0,0 +1,184 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+Directory of resolved programs, so a script seen before skips the Scanner,
+Parser, Optimizer and Resolver.
+
+Entries are named by a SHA-256 of the source bytes, the charset they are
+decoded with, FORMAT_VERSION and the options that change the tree. Each file is
+    magic, FORMAT_VERSION, payload length, payload (AstSerializer), CRC32 of payload
+and anything that does not check out or fails to decode is deleted and
+treated as a miss. A hit
+bumps the file's modification time, and when the directory grows past its size
+limit the least recently used entries are removed first.
+
+The cache never makes a run fail, an unreadable or unwritable entry only costs
+a fresh parse.
+ */
+class ScriptCache {
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Bump whenever Expr/Stmt, the Optimizer or the Resolver change the trees they produce
+    static final int FORMAT_VERSION = 4;
+
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final int HEADER_SIZE = 12; // magic, version, payload length
+    private static final String SUFFIX = ".loxc";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    ScriptCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+    }
+
+    String key(byte[] source, Charset charset, boolean optimized) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException error) {
+            // Every JVM has to provide SHA-256
+            throw new IllegalStateException(error);
+        }
+        digest.update(ByteBuffer.allocate(5).putInt(FORMAT_VERSION).put((byte) (optimized ? 1 : 0)).array());
+        digest.update(charset.name().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source);
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // Cached program for key, null on a miss
+    Program load(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException error) {
+            return null;
+        }
+
+        Program program = decode(bytes);
+        try {
+            if (program == null) {
+                Files.deleteIfExists(file);
+            } else {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException error) {
+            // Another run may have evicted it meanwhile, the entry is still usable
+        }
+        return program;
+    }
+
+    void store(String key, Program program) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            AstSerializer.write(new DataOutputStream(payload), program);
+            byte[] body = payload.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream(HEADER_SIZE + body.length + 4);
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) crc.getValue());
+
+            // Written aside then moved in, so concurrent runs never see half a file
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.write(temp, file.toByteArray());
+                Files.move(temp, directory.resolve(key + SUFFIX),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            evict();
+        } catch (IOException error) {
+            // Not cached this time, the next run parses again
+        }
+    }
+
+    // Null when the bytes are not a complete, uncorrupted entry of this version
+    private static Program decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE + 4) return null;
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (header.getInt() != MAGIC) return null;
+        if (header.getInt() != FORMAT_VERSION) return null;
+        int length = header.getInt();
+        if (length != bytes.length - HEADER_SIZE - 4) return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, length);
+        if ((int) crc.getValue() != header.getInt(HEADER_SIZE + length)) return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, HEADER_SIZE, length));
+        try {
+            Program program = AstSerializer.read(in);
+            if (in.available() != 0) return null;
+            return program;
+        } catch (IOException | RuntimeException error) {
+            // Whatever goes wrong reading an entry, it is a miss
+            return null;
+        }
+    }
+
+    // Removes least recently used entries until the directory fits in maxBytes
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                entries.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort(Comparator.comparing(ScriptCache::lastUsed));
+        for (Path file : entries) {
+            if (total <= maxBytes) break;
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) total -= size;
+        }
+    }
+
+    private static FileTime lastUsed(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException error) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
@@ -10,11 +10,13 @@ abstract class Stmt {
     R visitFunctionStmt(Function stmt);
     R visitIfStmt(If stmt);
     R visitPrintStmt(Print stmt);
+    R visitReturnStmt(Return stmt);
     R visitVarStmt(Var stmt);
     R visitWhileStmt(While stmt);
   }
   static class Block extends Stmt {
-    Block(List<Stmt> statements) {
+    Block(int line, List<Stmt> statements) {
+      this.line = line;
       this.statements = statements;
     }
 
@@ -23,7 +25,9 @@ abstract class Stmt {
       return visitor.visitBlockStmt(this);
     }
 
+    final int line;
     final List<Stmt> statements;
+    int frameSize;
   }
   static class Break extends Stmt {
     Break() {
@@ -62,6 +66,9 @@ abstract class Stmt {
     final Token name;
     final List<Token> params;
     final List<Stmt> body;
+    int slot = -1;
+    int global = -1;
+    int frameSize;
   }
   static class If extends Stmt {
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -91,6 +98,21 @@ abstract class Stmt {
 
     final Expr expression;
   }
+  static class Return extends Stmt {
+    Return(Token keyword, Expr value) {
+      this.keyword = keyword;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitReturnStmt(this);
+    }
+
+    final Token keyword;
+    final Expr value;
+    boolean tailCall;
+  }
   static class Var extends Stmt {
     Var(Token name, Expr initializer) {
       this.name = name;
@@ -104,9 +126,12 @@ abstract class Stmt {
 
     final Token name;
     final Expr initializer;
+    int slot = -1;
+    int global = -1;
   }
   static class While extends Stmt {
-    While(Expr condition, Stmt body) {
+    While(Token keyword, Expr condition, Stmt body) {
+      this.keyword = keyword;
       this.condition = condition;
       this.body = body;
     }
@@ -116,6 +141,7 @@ abstract class Stmt {
       return visitor.visitWhileStmt(this);
     }
 
+    final Token keyword;
     final Expr condition;
     final Stmt body;
   }
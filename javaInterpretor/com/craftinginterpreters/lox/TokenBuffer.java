@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Compact store for every token of an in-memory source.
+
+Each token is four parallel array entries: type ordinal, start offset,
+length and line. Lexemes stay in the source chars and a Token object is only
+built when the Parser or an error report asks for one. The Parser asks for
+the same current and previous token many times while matching, so those two
+are kept until it advances. Identifier lexemes are interned so every use of
+a name shares one String.
+ */
+class TokenBuffer implements TokenSource {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final char[] source;
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int count = 0;
+    private final Map<String, String> identifiers = new HashMap<>();
+    private int position = 0; // index of the Parser's current token
+    private Token current = null; // token(position) once asked for
+    private Token last = null; // token(position - 1) once asked for
+
+    TokenBuffer(char[] source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    String lexeme(int index) {
+        String fixed = Scanner.fixedLexeme(type(index));
+        if (fixed != null) return fixed;
+
+        String text = new String(source, starts[index], lengths[index]);
+        if (type(index) != TokenType.IDENTIFIER) return text;
+
+        String interned = identifiers.putIfAbsent(text, text);
+        return interned != null ? interned : text;
+    }
+
+    Token token(int index) {
+        TokenType type = type(index);
+        String text = lexeme(index);
+        return new Token(type, text, Scanner.literal(type, text), lines[index]);
+    }
+
+    @Override
+    public TokenType peekType() {
+        return type(position);
+    }
+
+    @Override
+    public TokenType previousType() {
+        return type(position - 1);
+    }
+
+    @Override
+    public Token peek() {
+        if (current == null) current = token(position);
+        return current;
+    }
+
+    @Override
+    public Token previous() {
+        if (last == null) last = token(position - 1);
+        return last;
+    }
+
+    @Override
+    public void advance() {
+        if (position < count - 1) {
+            position++;
+            last = current;
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+/*
+Cursor the Parser reads tokens through, one token of lookahead.
+
+Types can be checked without building the Token, so a source that stores
+tokens compactly only creates the ones the Parser actually keeps.
+ */
+interface TokenSource {
+    TokenType peekType();
+
+    TokenType previousType();
+
+    Token peek();
+
+    Token previous();
+
+    // Moves past the current token, stays put on EOF
+    void advance();
+}
@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+import java.util.function.Supplier;
+
+// Tokens pulled one at a time from a Scanner or a list, only two are held at once
+class TokenStream implements TokenSource {
+    private final Supplier<Token> next;
+    private Token current;
+    private Token previous = null;
+
+    TokenStream(Supplier<Token> next) {
+        this.next = next;
+        this.current = next.get();
+    }
+
+    @Override
+    public TokenType peekType() {
+        return current.type;
+    }
+
+    @Override
+    public TokenType previousType() {
+        return previous.type;
+    }
+
+    @Override
+    public Token peek() {
+        return current;
+    }
+
+    @Override
+    public Token previous() {
+        return previous;
+    }
+
+    @Override
+    public void advance() {
+        if (current.type == TokenType.EOF) return;
+        previous = current;
+        current = next.get();
+    }
+}
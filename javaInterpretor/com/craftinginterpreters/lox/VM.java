@@ -0,0 +1,795 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Stack based virtual machine running Chunks produced by the Compiler.
+
+Operands, temporaries and locals all live on one value stack: a call's
+window starts at its first argument, and its locals are slots in that
+window (see Compiler), so neither calls nor blocks allocate a frame.
+Closures reach the locals of enclosing calls through Upvalues.
+
+Numbers are never boxed on the stack. A slot holding a number is tagged
+NUMBER in stack and keeps its value in numbers at the same index; anything
+else is the value itself. Values are boxed only where they leave the stack,
+into a global, a closed upvalue, a native or print.
+
+When memory is metered, every stack slot and global a string is in holds it
+(see MemoryMeter): instructions that copy a value hold it again, those that
+pop or overwrite one release it. A closed upvalue does not hold its value.
+ */
+class VM {
+    // Function value created by CLOSURE
+    static class Closure {
+        final VmFunction function;
+        final Upvalue[] upvalues;
+        // Engine slots of the globals of the program that declared the function
+        final int[] globalSlots;
+
+        Closure(VmFunction function, int[] globalSlots) {
+            this.function = function;
+            this.upvalues = new Upvalue[function.upvalueCount];
+            this.globalSlots = globalSlots;
+        }
+
+        @Override
+        public String toString() {
+            return function.toString();
+        }
+    }
+
+    // Local captured by a closure: open while the local is still in its stack slot,
+    // closed with its own copy of the value once the local's scope has ended
+    static final class Upvalue {
+        int slot; // -1 once closed
+        Object closed = null; // numbers boxed
+        Upvalue next; // next open upvalue, at a lower slot
+
+        Upvalue(int slot, Upvalue next) {
+            this.slot = slot;
+            this.next = next;
+        }
+    }
+
+    // Operand of GET_GLOBAL, SET_GLOBAL and DEFINE_GLOBAL, shared by every VM running the chunk
+    static final class Global {
+        final Token name;
+        final int number; // the program's GlobalNames number of name
+
+        Global(Token name, int number) {
+            this.name = name;
+            this.number = number;
+        }
+    }
+
+    // Caller state saved by CALL and restored by RETURN
+    private static class CallFrame {
+        Closure closure;
+        int ip;
+        int base;
+        long frameMark; // MemoryMeter.frames before the call, released down to it on return
+    }
+
+    // Tag of a stack slot holding a number, the number itself is in numbers
+    static final Object NUMBER = new Object();
+
+    // Limits of the heap-allocated call stack, past either a call fails with Interpreter.STACK_OVERFLOW
+    // like the tree-walker does when the Java stack runs out, instead of growing until the heap is gone
+    static final int MAX_FRAMES = 200_000;
+    static final int MAX_STACK_SLOTS = 1 << 22;
+
+    final Environment globals = new Environment();
+    private final ErrorReporter reporter;
+    private Object[] stack = new Object[256];
+    private double[] numbers = new double[256];
+    private CallFrame[] callStack = new CallFrame[64];
+    private int callDepth = 0;
+    // Open upvalues of every active call, highest slot first
+    private Upvalue openUpvalues = null;
+    // Where print writes, Lox buffers it when running a file
+    OutputSink output = new PrintStreamSink(System.out);
+    // Set by --max-steps / --timeout, null otherwise
+    Budget budget = null;
+    // Set by --memory / --max-memory, null otherwise
+    MemoryMeter memory = null;
+
+    VM(ErrorReporter reporter) {
+        this.reporter = reporter;
+        Interpreter.defineNatives(globals);
+    }
+
+    void interpret(VmFunction script, String[] globalNames) {
+        int[] globalSlots = globals.link(globalNames);
+        if (budget != null) budget.start();
+        long frameMark = memory == null ? 0 : memory.frames;
+        try {
+            run(new Closure(script, globalSlots));
+        } catch (RuntimeError error) {
+            output.flush();
+            reporter.runtimeError(error);
+        } finally {
+            output.flush();
+            // A runtime error leaves every active call behind
+            if (memory != null) {
+                memory.releaseFramesTo(frameMark);
+                memory.releaseAll(stack, 0, stack.length);
+            }
+            for (int i = 0; i < callDepth; i++) {
+                callStack[i].closure = null;
+            }
+            callDepth = 0;
+            openUpvalues = null;
+            Arrays.fill(stack, null);
+        }
+    }
+
+    private void run(Closure script) {
+        Closure closure = script;
+        VmFunction function = script.function;
+        byte[] code = function.chunk.code;
+        Object[] constants = function.constants;
+        double[] constantNumbers = function.numbers;
+        int ip = 0;
+        int base = 0;
+        ensureStack(function.maxStack);
+        // The compiler bounds how high each call's window gets, so pushes need no checks
+        Object[] stack = this.stack;
+        double[] numbers = this.numbers;
+        int sp = function.slots;
+        Environment globals = this.globals;
+        int[] globalSlots = closure.globalSlots;
+        Budget budget = this.budget;
+        MemoryMeter memory = this.memory;
+
+        for (; ; ) {
+            int opStart = ip;
+            byte op = code[ip++];
+            switch (op) {
+                case OpCode.CONSTANT: {
+                    int index = readShort(code, ip);
+                    ip += 2;
+                    stack[sp] = constants[index];
+                    numbers[sp] = constantNumbers[index];
+                    sp++;
+                    break;
+                }
+                case OpCode.NIL:
+                    stack[sp++] = null;
+                    break;
+                case OpCode.TRUE:
+                    stack[sp++] = Boolean.TRUE;
+                    break;
+                case OpCode.FALSE:
+                    stack[sp++] = Boolean.FALSE;
+                    break;
+                case OpCode.UNINITIALIZED:
+                    stack[sp++] = Interpreter.uninitialized;
+                    break;
+                case OpCode.POP:
+                    sp--;
+                    if (memory != null) memory.release(stack[sp]);
+                    stack[sp] = null;
+                    break;
+
+                case OpCode.GET_LOCAL: {
+                    int slot = base + readShort(code, ip);
+                    ip += 2;
+                    if (stack[slot] == Interpreter.uninitialized) {
+                        throw error(function, opStart, "Variable must be initialized before use.");
+                    }
+                    stack[sp] = stack[slot];
+                    numbers[sp] = numbers[slot];
+                    if (memory != null) hold(memory, stack[sp], function, opStart);
+                    sp++;
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = base + readShort(code, ip);
+                    ip += 2;
+                    if (memory != null) {
+                        hold(memory, stack[sp - 1], function, opStart);
+                        memory.release(stack[slot]);
+                    }
+                    stack[slot] = stack[sp - 1];
+                    numbers[slot] = numbers[sp - 1];
+                    break;
+                }
+                case OpCode.DEFINE_LOCAL: {
+                    int slot = base + readShort(code, ip);
+                    ip += 2;
+                    sp--;
+                    if (memory != null) memory.release(stack[slot]);
+                    stack[slot] = stack[sp];
+                    numbers[slot] = numbers[sp];
+                    stack[sp] = null;
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    Global global = (Global) constants[readShort(code, ip)];
+                    ip += 2;
+                    Object value = globals.get(global.name, globalSlots[global.number]);
+                    if (value == Interpreter.uninitialized) {
+                        throw new RuntimeError(global.name, "Variable must be initialized before use.");
+                    }
+                    if (memory != null) hold(memory, value, function, opStart);
+                    store(stack, numbers, sp++, value);
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    Global global = (Global) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (memory != null) hold(memory, stack[sp - 1], function, opStart);
+                    Object replaced = globals.assign(global.name, globalSlots[global.number],
+                            load(stack, numbers, sp - 1));
+                    if (memory != null) memory.release(replaced);
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    Global global = (Global) constants[readShort(code, ip)];
+                    ip += 2;
+                    sp--;
+                    // The global takes over the stack slot's hold
+                    Object replaced = globals.define(globalSlots[global.number], load(stack, numbers, sp));
+                    if (memory != null) memory.release(replaced);
+                    stack[sp] = null;
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    Upvalue upvalue = closure.upvalues[readShort(code, ip)];
+                    ip += 2;
+                    if (upvalue.slot >= 0) {
+                        stack[sp] = stack[upvalue.slot];
+                        numbers[sp] = numbers[upvalue.slot];
+                    } else {
+                        store(stack, numbers, sp, upvalue.closed);
+                    }
+                    if (stack[sp] == Interpreter.uninitialized) {
+                        throw error(function, opStart, "Variable must be initialized before use.");
+                    }
+                    if (memory != null) hold(memory, stack[sp], function, opStart);
+                    sp++;
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    Upvalue upvalue = closure.upvalues[readShort(code, ip)];
+                    ip += 2;
+                    if (upvalue.slot >= 0) {
+                        if (memory != null) {
+                            hold(memory, stack[sp - 1], function, opStart);
+                            memory.release(stack[upvalue.slot]);
+                        }
+                        stack[upvalue.slot] = stack[sp - 1];
+                        numbers[upvalue.slot] = numbers[sp - 1];
+                    } else {
+                        upvalue.closed = load(stack, numbers, sp - 1);
+                    }
+                    break;
+                }
+
+                case OpCode.EQUAL:
+                case OpCode.NOT_EQUAL: {
+                    sp--;
+                    boolean equal;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        // Same as Double.equals(), which isEqual() uses for numbers
+                        equal = Double.doubleToLongBits(numbers[sp - 1]) == Double.doubleToLongBits(numbers[sp]);
+                    } else {
+                        equal = Interpreter.isEqual(load(stack, numbers, sp - 1), load(stack, numbers, sp));
+                        if (memory != null) memory.releaseAll(stack, sp - 1, sp + 1);
+                    }
+                    stack[sp] = null;
+                    stack[sp - 1] = equal == (op == OpCode.EQUAL) ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                }
+                case OpCode.GREATER:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    stack[sp - 1] = numbers[sp - 1] > numbers[sp] ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                case OpCode.GREATER_EQUAL:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    stack[sp - 1] = numbers[sp - 1] >= numbers[sp] ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                case OpCode.LESS:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    stack[sp - 1] = numbers[sp - 1] < numbers[sp] ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                case OpCode.LESS_EQUAL:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    stack[sp - 1] = numbers[sp - 1] <= numbers[sp] ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                case OpCode.ADD:
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] += numbers[sp];
+                    } else {
+                        Object left = load(stack, numbers, sp - 1);
+                        stack[sp - 1] = concat(left, load(stack, numbers, sp), function, opStart);
+                        if (memory != null) {
+                            memory.release(left);
+                            memory.release(stack[sp]);
+                        }
+                        stack[sp] = null;
+                    }
+                    break;
+                case OpCode.SUBTRACT:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    numbers[sp - 1] -= numbers[sp];
+                    break;
+                case OpCode.MULTIPLY:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    numbers[sp - 1] *= numbers[sp];
+                    break;
+                case OpCode.DIVIDE:
+                    sp--;
+                    checkNumberOperands(stack, sp, function, opStart);
+                    numbers[sp - 1] = divide(numbers[sp - 1], numbers[sp], function, opStart);
+                    break;
+                case OpCode.GREATER_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp++] = number(function, base, left) > number(function, base, right) ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                }
+                case OpCode.GREATER_EQUAL_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp++] = number(function, base, left) >= number(function, base, right) ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                }
+                case OpCode.LESS_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp++] = number(function, base, left) < number(function, base, right) ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                }
+                case OpCode.LESS_EQUAL_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp++] = number(function, base, left) <= number(function, base, right) ? Boolean.TRUE : Boolean.FALSE;
+                    break;
+                }
+                case OpCode.ADD_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    if (isNumber(function, base, left, opStart) & isNumber(function, base, right, opStart)) {
+                        stack[sp] = NUMBER;
+                        numbers[sp] = number(function, base, left) + number(function, base, right);
+                    } else {
+                        stack[sp] = concat(value(function, base, left), value(function, base, right), function, opStart);
+                    }
+                    sp++;
+                    break;
+                }
+                case OpCode.SUBTRACT_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp] = NUMBER;
+                    numbers[sp] = number(function, base, left) - number(function, base, right);
+                    sp++;
+                    break;
+                }
+                case OpCode.MULTIPLY_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp] = NUMBER;
+                    numbers[sp] = number(function, base, left) * number(function, base, right);
+                    sp++;
+                    break;
+                }
+                case OpCode.DIVIDE_OPERANDS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    ip += 4;
+                    checkNumberOperands(function, base, left, right, opStart);
+                    stack[sp] = NUMBER;
+                    numbers[sp] = divide(number(function, base, left), number(function, base, right), function, opStart);
+                    sp++;
+                    break;
+                }
+                case OpCode.NOT:
+                    if (memory != null) memory.release(stack[sp - 1]);
+                    stack[sp - 1] = Interpreter.isTruthy(stack[sp - 1]) ? Boolean.FALSE : Boolean.TRUE;
+                    break;
+                case OpCode.NEGATE:
+                    if (stack[sp - 1] != NUMBER) {
+                        throw error(function, opStart, "Operand must be a number.");
+                    }
+                    numbers[sp - 1] = -numbers[sp - 1];
+                    break;
+
+                case OpCode.PRINT:
+                    sp--;
+                    output.print(load(stack, numbers, sp));
+                    if (memory != null) memory.release(stack[sp]);
+                    stack[sp] = null;
+                    break;
+                case OpCode.JUMP:
+                    ip += 2 + readShort(code, ip);
+                    break;
+                case OpCode.JUMP_IF_FALSE:
+                    // The NUMBER tag is truthy like every number
+                    if (Interpreter.isTruthy(stack[sp - 1])) {
+                        ip += 2;
+                    } else {
+                        ip += 2 + readShort(code, ip);
+                    }
+                    break;
+                case OpCode.POP_JUMP_IF_FALSE: {
+                    sp--;
+                    boolean truthy = Interpreter.isTruthy(stack[sp]);
+                    if (memory != null) memory.release(stack[sp]);
+                    stack[sp] = null;
+                    if (truthy) {
+                        ip += 2;
+                    } else {
+                        ip += 2 + readShort(code, ip);
+                    }
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_GREATER: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    checkNumberOperands(function, base, left, right, opStart);
+                    if (number(function, base, left) > number(function, base, right)) {
+                        ip += 6;
+                    } else {
+                        ip += 6 + readShort(code, ip + 4);
+                    }
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    checkNumberOperands(function, base, left, right, opStart);
+                    if (number(function, base, left) >= number(function, base, right)) {
+                        ip += 6;
+                    } else {
+                        ip += 6 + readShort(code, ip + 4);
+                    }
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_LESS: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    checkNumberOperands(function, base, left, right, opStart);
+                    if (number(function, base, left) < number(function, base, right)) {
+                        ip += 6;
+                    } else {
+                        ip += 6 + readShort(code, ip + 4);
+                    }
+                    break;
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL: {
+                    int left = readShort(code, ip);
+                    int right = readShort(code, ip + 2);
+                    checkNumberOperands(function, base, left, right, opStart);
+                    if (number(function, base, left) <= number(function, base, right)) {
+                        ip += 6;
+                    } else {
+                        ip += 6 + readShort(code, ip + 4);
+                    }
+                    break;
+                }
+                case OpCode.LOOP:
+                    if (budget != null && --budget.remaining == 0) checkpoint(budget, function, opStart);
+                    ip += 2 - readShort(code, ip);
+                    break;
+
+                case OpCode.CALL: {
+                    if (budget != null && --budget.remaining == 0) checkpoint(budget, function, opStart);
+                    int argCount = code[ip++] & 0xff;
+                    int calleeSlot = sp - argCount - 1;
+                    Object callee = stack[calleeSlot];
+
+                    if (callee instanceof Closure) {
+                        Closure called = (Closure) callee;
+                        VmFunction calledFunction = called.function;
+                        checkArity(function, opStart, calledFunction.arity, argCount);
+                        if (callDepth == MAX_FRAMES || calleeSlot + 1 + calledFunction.maxStack > MAX_STACK_SLOTS) {
+                            throw error(function, opStart, Interpreter.STACK_OVERFLOW);
+                        }
+
+                        long frameMark = 0;
+                        if (memory != null) {
+                            frameMark = memory.frames;
+                            String exceeded = memory.allocateFrame(MemoryMeter.windowBytes(calledFunction.maxStack));
+                            if (exceeded != null) throw error(function, opStart, exceeded);
+                        }
+                        CallFrame caller = pushCallFrame();
+                        caller.closure = closure;
+                        caller.ip = ip;
+                        caller.base = base;
+                        caller.frameMark = frameMark;
+
+                        // Arguments are already in place as the first slots of the callee's window
+                        base = calleeSlot + 1;
+                        if (base + calledFunction.maxStack > stack.length) {
+                            ensureStack(base + calledFunction.maxStack);
+                            stack = this.stack;
+                            numbers = this.numbers;
+                        }
+                        sp = base + calledFunction.slots;
+                        closure = called;
+                        globalSlots = called.globalSlots;
+                        function = calledFunction;
+                        code = function.chunk.code;
+                        constants = function.constants;
+                        constantNumbers = function.numbers;
+                        ip = 0;
+                    } else if (callee instanceof LoxCallable) {
+                        LoxCallable callable = (LoxCallable) callee;
+                        checkArity(function, opStart, callable.arity(), argCount);
+
+                        // Natives never re-enter the tree-walker, so there is no Interpreter to hand over
+                        Object result = callNative(callable, calleeSlot + 1, argCount, function, opStart);
+                        if (memory != null) memory.releaseAll(stack, calleeSlot + 1, sp);
+                        Arrays.fill(stack, calleeSlot, sp, null);
+                        sp = calleeSlot;
+                        store(stack, numbers, sp++, result);
+                    } else {
+                        throw error(function, opStart, "Can only call functions and classes.");
+                    }
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    VmFunction declared = (VmFunction) constants[readShort(code, ip)];
+                    ip += 2;
+                    Closure created = new Closure(declared, globalSlots);
+                    for (int i = 0; i < declared.upvalueCount; i++) {
+                        boolean local = code[ip] == 1;
+                        int index = readShort(code, ip + 1);
+                        ip += 3;
+                        created.upvalues[i] = local ? captureUpvalue(base + index) : closure.upvalues[index];
+                    }
+                    stack[sp++] = created;
+                    break;
+                }
+                case OpCode.RETURN: {
+                    if (callDepth == 0) return;
+                    sp--;
+                    if (openUpvalues != null) closeUpvalues(base);
+                    // The result takes the callee's slot, the rest of the window is cleared
+                    stack[base - 1] = stack[sp];
+                    numbers[base - 1] = numbers[sp];
+                    if (memory != null) memory.releaseAll(stack, base, sp);
+                    Arrays.fill(stack, base, sp + 1, null);
+                    sp = base;
+
+                    CallFrame caller = callStack[--callDepth];
+                    if (memory != null) memory.releaseFramesTo(caller.frameMark);
+                    closure = caller.closure;
+                    globalSlots = closure.globalSlots;
+                    function = closure.function;
+                    code = function.chunk.code;
+                    constants = function.constants;
+                    constantNumbers = function.numbers;
+                    ip = caller.ip;
+                    base = caller.base;
+                    caller.closure = null;
+                    break;
+                }
+                case OpCode.CLOSE_LOCALS: {
+                    int first = base + readShort(code, ip);
+                    int count = readShort(code, ip + 2);
+                    ip += 4;
+                    if (openUpvalues != null) closeUpvalues(first);
+                    if (memory != null) memory.releaseAll(stack, first, first + count);
+                    Arrays.fill(stack, first, first + count, null);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Puts value in slot, unboxing numbers
+    private static void store(Object[] stack, double[] numbers, int slot, Object value) {
+        if (value instanceof Double) {
+            stack[slot] = NUMBER;
+            numbers[slot] = (double) value;
+        } else {
+            stack[slot] = value;
+        }
+    }
+
+    // Value in slot, numbers boxed
+    private static Object load(Object[] stack, double[] numbers, int slot) {
+        Object value = stack[slot];
+        if (value == NUMBER) return numbers[slot];
+        return value;
+    }
+
+    // Operands of *_OPERANDS and JUMP_IF_NOT_* instructions are a local slot of
+    // the running call, or OPERAND_CONSTANT plus the index of a number constant
+
+    // True if the operand holds a number, an uninitialized local is an error
+    private boolean isNumber(VmFunction function, int base, int operand, int opStart) {
+        if (operand >= OpCode.OPERAND_CONSTANT) return true;
+        Object value = stack[base + operand];
+        if (value == NUMBER) return true;
+        if (value == Interpreter.uninitialized) {
+            throw error(function, opStart, "Variable must be initialized before use.");
+        }
+        return false;
+    }
+
+    // Number in an operand that isNumber() accepted
+    private double number(VmFunction function, int base, int operand) {
+        if (operand >= OpCode.OPERAND_CONSTANT) return function.numbers[operand - OpCode.OPERAND_CONSTANT];
+        return numbers[base + operand];
+    }
+
+    // Value of an operand, numbers boxed
+    private Object value(VmFunction function, int base, int operand) {
+        if (operand >= OpCode.OPERAND_CONSTANT) return function.numbers[operand - OpCode.OPERAND_CONSTANT];
+        return load(stack, numbers, base + operand);
+    }
+
+    private void checkNumberOperands(VmFunction function, int base, int left, int right, int opStart) {
+        // Both are looked at first, an uninitialized right operand fails like its GET_LOCAL would
+        if (isNumber(function, base, left, opStart) & isNumber(function, base, right, opStart)) return;
+        throw error(function, opStart, "Operands must be numbers.");
+    }
+
+    // Left + right when they are not both numbers
+    private Object concat(Object left, Object right, VmFunction function, int opStart) {
+        if ((LoxString.isString(left) || left instanceof Double) &&
+                (LoxString.isString(right) || right instanceof Double)) {
+            // Strings, or one string and one number
+            if (memory == null) return LoxString.concat(left, right, null);
+            int temporaries = memory.temporaries();
+            LoxString result = LoxString.concat(left, right, memory);
+            if (result == null) throw error(function, opStart, memory.exceeded());
+            // The slot the result goes to holds it at once, it never stays a temporary
+            memory.hold(result);
+            memory.releaseTemporaries(temporaries, null);
+            return result;
+        }
+        throw error(function, opStart, "Operands must be numbers or strings.");
+    }
+
+    private double divide(double left, double right, VmFunction function, int opStart) {
+        if (right != 0.0) return left / right;
+        if (left == 0.0) return Double.NaN;
+        throw error(function, opStart, "Cannot divide by 0");
+    }
+
+    private void ensureStack(int size) {
+        if (size <= stack.length) return;
+        int capacity = Math.max(size, stack.length * 2);
+        stack = Arrays.copyOf(stack, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+    }
+
+    // Open upvalue for slot, shared by every closure that captures it
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    // Moves the value of every open upvalue at or above slot into the upvalue
+    private void closeUpvalues(int slot) {
+        while (openUpvalues != null && openUpvalues.slot >= slot) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = load(stack, numbers, upvalue.slot);
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    // Arguments are the argCount stack slots from first on
+    private Object callNative(LoxCallable callable, int first, int argCount, VmFunction function, int opStart) {
+        if (callable instanceof FixedArityCallable) {
+            FixedArityCallable fixed = (FixedArityCallable) callable;
+            switch (argCount) {
+                case 0:
+                    return fixed.call0(null);
+                case 1:
+                    return fixed.call1(null, argument(first));
+                case 2:
+                    return fixed.call2(null, argument(first), argument(first + 1));
+                case 3:
+                    return fixed.call3(null, argument(first), argument(first + 1), argument(first + 2));
+                case 4:
+                    return fixed.call4(null, argument(first), argument(first + 1), argument(first + 2),
+                            argument(first + 3));
+            }
+        }
+
+        if (memory == null) return callable.call(null, arguments(first, argCount));
+        long argumentBytes = MemoryMeter.listBytes(argCount);
+        String exceeded = memory.allocateArguments(argumentBytes);
+        if (exceeded != null) throw error(function, opStart, exceeded);
+        try {
+            return callable.call(null, arguments(first, argCount));
+        } finally {
+            memory.releaseArguments(argumentBytes);
+        }
+    }
+
+    private List<Object> arguments(int first, int argCount) {
+        List<Object> arguments = new ArrayList<>(argCount);
+        for (int i = first; i < first + argCount; i++) {
+            arguments.add(argument(i));
+        }
+        return arguments;
+    }
+
+    // Natives get plain Java Strings and boxed numbers
+    private Object argument(int slot) {
+        return LoxString.flatten(load(stack, numbers, slot));
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private CallFrame pushCallFrame() {
+        if (callDepth == callStack.length) callStack = Arrays.copyOf(callStack, callDepth * 2);
+        if (callStack[callDepth] == null) callStack[callDepth] = new CallFrame();
+        return callStack[callDepth++];
+    }
+
+    // Operands of a binary operator, already popped down to sp: left at sp - 1, right at sp
+    private void checkNumberOperands(Object[] stack, int sp, VmFunction function, int opStart) {
+        if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) return;
+        throw error(function, opStart, "Operands must be numbers.");
+    }
+
+    private void checkArity(VmFunction function, int opStart, int arity, int argCount) {
+        if (arity == argCount) return;
+        throw error(function, opStart, "Expected " + arity
+                + " arguments but got " + argCount + ".");
+    }
+
+    private void hold(MemoryMeter memory, Object value, VmFunction function, int opStart) {
+        String exceeded = memory.hold(value);
+        if (exceeded != null) throw error(function, opStart, exceeded);
+    }
+
+    private void checkpoint(Budget budget, VmFunction function, int opStart) {
+        String exceeded = budget.checkpoint();
+        if (exceeded != null) throw error(function, opStart, exceeded);
+    }
+
+    // RuntimeError only needs a line from the token, the chunk's line table provides it
+    private RuntimeError error(VmFunction function, int opStart, String message) {
+        Token location = new Token(TokenType.EOF, "", null, function.chunk.lines[opStart]);
+        return new RuntimeError(location, message);
+    }
+}
@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+// Function body compiled to its own Chunk, lives in the constant pool of the enclosing chunk
+class VmFunction {
+    final String name;
+    final int arity;
+    final int upvalueCount;
+    final int slots; // stack slots for parameters and locals, from the first argument on
+    final int maxStack; // slots plus the most temporaries the body keeps on the stack at once
+    final Chunk chunk;
+    // The chunk's constants the way the VM keeps values on its stack: numbers
+    // tagged VM.NUMBER in constants with their value in numbers
+    final Object[] constants;
+    final double[] numbers;
+
+    VmFunction(String name, int arity, int upvalueCount, int slots, int maxStack, Chunk chunk) {
+        this.name = name;
+        this.arity = arity;
+        this.upvalueCount = upvalueCount;
+        this.slots = slots;
+        this.maxStack = maxStack;
+        this.chunk = chunk;
+        this.constants = chunk.constants.toArray();
+        this.numbers = new double[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            if (constants[i] instanceof Double) {
+                numbers[i] = (double) constants[i];
+                constants[i] = VM.NUMBER;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -15,8 +15,9 @@ public class GenerateAst {
         String outputDir = args[0];
 
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
+                "Assign   : Token name, Expr value | int depth = -1, int slot, int global = -1",
+                // node rewrites itself after seeing the operand types, see BinaryNode; plain field, the race between engines is benign
+                "Binary   : Expr left, Token operator, Expr right | BinaryNode node = BinaryNode.UNINITIALIZED",
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
                 // callee is expression, arguments is parameters, Paren is closing ')' for error handling
                 "CommaCollection : Expr left, Token operator, Expr right",
@@ -24,20 +25,28 @@ public class GenerateAst {
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name",
+                // depth and slot are filled in by the Resolver; depth -1 means global,
+                // global is then the program's GlobalNames number of the name
+                "Variable : Token name | int depth = -1, int slot, int global = -1",
                 "Ternary  : Expr condition, Expr trueLeg, Expr falseLeg"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
+                // line is that of the '{', or of the 'for' a desugared loop's block stands for;
+                // frameSize is the number of slots the Resolver handed out in the scope
+                "Block      : int line, List<Stmt> statements | int frameSize",
                 "Break      : ",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params," + " List<Stmt> body",
+                // slot is -1 for a top level declaration, global is then its GlobalNames number
+                "Function   : Token name, List<Token> params," + " List<Stmt> body" +
+                        " | int slot = -1, int global = -1, int frameSize",
                 "If         : Expr condition, Stmt thenBranch," +
                         " Stmt elseBranch",
                 "Print      : Expr expression",
-                "Var        : Token name, Expr initializer",
-                "While : Expr condition, Stmt body"
+                // tailCall is set by the Resolver when value is a call whose result is returned as is
+                "Return     : Token keyword, Expr value | boolean tailCall",
+                "Var        : Token name, Expr initializer | int slot = -1, int global = -1",
+                "While : Token keyword, Expr condition, Stmt body"
         ));
 
     }
@@ -55,10 +64,13 @@ public class GenerateAst {
         defineVisitor(writer, baseName, types);
 
         // The AST classes.
+        // Fields after '|' are mutable annotations set by later passes, not constructor params
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fieldLists = type.split(":")[1].split("\\|");
+            String fields = fieldLists[0].trim();
+            String annotations = fieldLists.length > 1 ? fieldLists[1].trim() : "";
+            defineType(writer, baseName, className, fields, annotations);
         }
 
         writer.println();
@@ -71,7 +83,7 @@ public class GenerateAst {
 
     private static void defineType(
             PrintWriter writer, String baseName,
-            String className, String fieldList) {
+            String className, String fieldList, String annotationList) {
         writer.println("  static class " + className + " extends " +
                 baseName + " {");
 
@@ -109,6 +121,12 @@ public class GenerateAst {
             writer.println("    final " + field + ";");
         }
 
+        if (!annotationList.isEmpty()) {
+            for (String annotation : annotationList.split(", ")) {
+                writer.println("    " + annotation + ";");
+            }
+        }
+
         writer.println("  }");
     }
 
@@ -0,0 +1,141 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+// Recursion depth of the tree-walker, stack overflow reporting, and programs shared between engines
+class InterpreterTest {
+    private static final String RECURSION = "fun f(n) { if (n == 0) return 0; return 1 + f(n - 1); }\nprint f(%d);";
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private final LoxEngine engine = new LoxEngine(new PrintStream(out, true), new PrintStream(err, true));
+
+    // Runs source on a thread with the given stack, returns whether it ran without a runtime error
+    private boolean runOnStack(String source, long stackBytes) throws InterruptedException {
+        boolean[] ok = new boolean[1];
+        Thread thread = new Thread(null, () -> ok[0] = engine.run(source), "test", stackBytes);
+        thread.start();
+        thread.join();
+        return ok[0];
+    }
+
+    @Test
+    void recursesThousandsDeepOnTheScriptStack() throws InterruptedException {
+        assertTrue(runOnStack(String.format(RECURSION, 5000), Lox.STACK_BYTES));
+
+        assertEquals("5000\n", out.toString());
+        assertEquals("", err.toString());
+    }
+
+    @Test
+    void reportsStackOverflowAsRuntimeError() throws InterruptedException {
+        assertFalse(runOnStack(String.format(RECURSION, 1_000_000), 1 << 20));
+
+        assertEquals("", out.toString());
+        assertEquals("Stack overflow.\n[line 1]\n", err.toString().replace("\r\n", "\n"));
+        assertTrue(engine.hadRuntimeError());
+        assertEquals(70, Lox.exitStatus(engine));
+    }
+
+    @Test
+    void engineRunsAgainAfterStackOverflow() throws InterruptedException {
+        assertFalse(runOnStack(String.format(RECURSION, 1_000_000), 1 << 20));
+        out.reset();
+
+        assertTrue(runOnStack("fun g(n) { return n + 1; } print g(1);", 1 << 20));
+        assertEquals("2\n", out.toString());
+    }
+
+    @Test
+    void tailCallsRunInConstantStack() throws InterruptedException {
+        String loop = "fun count(n) { if (n == 0) return \"done\"; return count(n - 1); }\nprint count(1000000);";
+
+        assertTrue(runOnStack(loop, 1 << 20));
+        assertEquals("done\n", out.toString());
+    }
+
+    @Test
+    void sharedProgramUsesEachEnginesGlobals() {
+        Program program = engine.compile("fun show() { print name; } name = name + \"!\"; show();");
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        LoxEngine one = new LoxEngine(new PrintStream(first, true), new PrintStream(err, true));
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        LoxEngine two = new LoxEngine(new PrintStream(second, true), new PrintStream(err, true));
+        // Defined in a different order, so the same name has a different slot in each engine
+        assertTrue(one.run("var name = \"one\";"));
+        assertTrue(two.run("var other = 0; var name = \"two\";"));
+
+        assertTrue(one.run(program));
+        assertTrue(two.run(program));
+        assertTrue(one.run(program));
+        assertEquals("one!\none!!\n", first.toString());
+        assertEquals("two!\n", second.toString());
+        assertEquals("", err.toString());
+    }
+
+    // Each program numbers its globals from 0, an engine only adds slots for names it has not seen
+    @Test
+    void globalsAreLinkedPerProgram() {
+        Environment globals = new Environment();
+
+        assertArrayEquals(new int[]{0, 1}, globals.link(new String[]{"a", "b"}));
+        assertArrayEquals(new int[]{1, 2, 0}, globals.link(new String[]{"b", "c", "a"}));
+        assertArrayEquals(new int[]{}, globals.link(new String[0]));
+    }
+
+    // Functions keep reading globals through the numbers of the program that declared them
+    @Test
+    void functionsFromEarlierProgramsKeepTheirGlobals() {
+        for (boolean useVm : new boolean[]{false, true}) {
+            out.reset();
+            engine.useVm(useVm);
+            assertTrue(engine.run("var a = 1; var b = 2; fun f() { return a + b; } fun apply(h) { return h(); }"));
+            assertTrue(engine.run("var b = 10; print f(); var x = 5; fun k() { return x + b; } print apply(k);"));
+
+            assertEquals("11\n15\n", out.toString());
+        }
+        assertEquals("", err.toString());
+    }
+
+    @Test
+    void sharedProgramRunsOnManyEnginesAtOnce() throws Exception {
+        Program program = engine.compile("fun add(a, b) { return a + b; }\n"
+                + "var total = 0; for (var i = 0; i < 2000; i = i + 1) total = add(total, i);\n"
+                + "var s = \"\"; for (var i = 0; i < 3; i = i + 1) s = add(s, tag);\n"
+                + "print total; print s;");
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> runs = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String tag = i % 2 == 0 ? "x" : "y";
+                runs.add(pool.submit(() -> {
+                    ByteArrayOutputStream printed = new ByteArrayOutputStream();
+                    LoxEngine own = new LoxEngine(new PrintStream(printed, true), new PrintStream(printed, true));
+                    own.run("var tag = \"" + tag + "\";");
+                    own.run(program);
+                    return printed.toString();
+                }));
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                String tag = i % 2 == 0 ? "x" : "y";
+                assertEquals("1999000\n" + tag + tag + tag + "\n", runs.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
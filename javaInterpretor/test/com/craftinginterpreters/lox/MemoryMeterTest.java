@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.jupiter.api.Test;
+
+// Memory limits on both engines: checked before allocating, released as scopes exit, and calls count
+class MemoryMeterTest {
+    private static final long LIMIT = 128 * 1024;
+    private static final String BUILD = "fun build(n) { var s = \"\"; for (var i = 0; i < n; i = i + 1)"
+            + " s = s + \"0123456789\"; return s; }\n";
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private LoxEngine engine(boolean useVm) {
+        return new LoxEngine(new PrintStream(out, true), new PrintStream(err, true)).useVm(useVm).limitMemory(LIMIT);
+    }
+
+    // The part of the memory report saying how much is in use at exit
+    private static String inUse(LoxEngine engine) {
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        engine.reportMemory(new PrintStream(report, true));
+        String text = report.toString();
+        return text.substring(text.indexOf(" bytes, ") + 8, text.indexOf(" in use"));
+    }
+
+    @Test
+    void peakNeverExceedsTheLimit() {
+        for (boolean useVm : new boolean[]{false, true}) {
+            err.reset();
+            LoxEngine engine = engine(useVm);
+            assertFalse(engine.run("var s = \"\";\nwhile (true) s = s + \"0123456789\";"));
+
+            assertEquals("Memory limit of " + LIMIT + " bytes exceeded.\n[line 2]\n", err.toString().replace("\r\n", "\n"));
+            assertTrue(engine.peakMemory() <= LIMIT, "peak " + engine.peakMemory());
+        }
+    }
+
+    // Without release each iteration's string would still be counted, 100 of them are well over the limit
+    @Test
+    void releasesStringsWhenTheirScopeExits() {
+        for (boolean useVm : new boolean[]{false, true}) {
+            LoxEngine engine = engine(useVm);
+            assertTrue(engine.run(BUILD + "for (var k = 0; k < 100; k = k + 1) { var t = build(1000); }"
+                    + " var g = build(1000); for (var k = 0; k < 100; k = k + 1) g = build(1000);"
+                    + " for (var k = 0; k < 100; k = k + 1) print build(1000) == \"\";"));
+            assertTrue(engine.run("g = nil;"));
+
+            assertEquals("0", inUse(engine));
+        }
+    }
+
+    @Test
+    void deepRecursionRunsOutOfMemoryBeforeStack() throws InterruptedException {
+        for (boolean useVm : new boolean[]{false, true}) {
+            err.reset();
+            LoxEngine engine = engine(useVm);
+            boolean[] ok = new boolean[1];
+            Thread thread = new Thread(null, () -> ok[0] = engine.run("fun f(n) { return 1 + f(n + 1); }\nprint f(0);"),
+                    "test", 1 << 20);
+            thread.start();
+            thread.join();
+
+            assertFalse(ok[0]);
+            assertEquals("Memory limit of " + LIMIT + " bytes exceeded.\n[line 1]\n", err.toString().replace("\r\n", "\n"));
+            assertEquals("0", inUse(engine));
+        }
+    }
+
+    // The block that fails is reported on its '{', even when none of its statements has a line
+    @Test
+    void blockOverTheLimitFailsOnItsBrace() {
+        long limit = MemoryMeter.frameBytes(0) + MemoryMeter.frameBytes(1) - 1;
+        LoxEngine engine = new LoxEngine(new PrintStream(out, true), new PrintStream(err, true)).limitMemory(limit);
+        assertFalse(engine.run("{\n  nil;\n  {\n    var a;\n  }\n}"));
+
+        assertEquals("Memory limit of " + limit + " bytes exceeded.\n[line 3]\n", err.toString().replace("\r\n", "\n"));
+    }
+}
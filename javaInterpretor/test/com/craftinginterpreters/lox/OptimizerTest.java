@@ -0,0 +1,165 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// Folding and dead branch removal, and that optimized programs behave the same
+class OptimizerTest {
+    private static List<Stmt> optimize(String source) {
+        ErrorReporter reporter = new ErrorReporter(System.err);
+        List<Stmt> statements = new Parser(new Scanner(source, reporter).scanTokens(), reporter).parse();
+        assertEquals(0, reporter.errors, "parse errors");
+        return new Optimizer().optimize(statements);
+    }
+
+    // Tree of the expression in "print expression;" after optimizing
+    private static String folded(String expression) {
+        Stmt.Print print = (Stmt.Print) optimize("print " + expression + ";").get(0);
+        return new AstPrinter().print(print.expression);
+    }
+
+    @Test
+    void foldsArithmetic() {
+        assertEquals("7.0", folded("1 + 2 * 3"));
+        assertEquals("-1.0", folded("(1 - 2)"));
+        assertEquals("2.5", folded("5 / 2"));
+        assertEquals("-2.0", folded("-(1 + 1)"));
+    }
+
+    @Test
+    void foldsComparisonAndEquality() {
+        assertEquals("true", folded("1 < 2"));
+        assertEquals("false", folded("2 <= 1"));
+        assertEquals("true", folded("1 == 1"));
+        assertEquals("false", folded("\"a\" != \"a\""));
+        assertEquals("true", folded("nil == nil"));
+        assertEquals("false", folded("1 == \"1\""));
+    }
+
+    @Test
+    void foldsConcatenationAsStringify() {
+        assertEquals("ab", folded("\"a\" + \"b\""));
+        assertEquals("a1", folded("\"a\" + 1"));
+        assertEquals("2.5b", folded("2.5 + \"b\""));
+    }
+
+    @Test
+    void foldsNot() {
+        assertEquals("true", folded("!nil"));
+        assertEquals("false", folded("!0"));
+    }
+
+    @Test
+    void foldsInsideLargerExpressions() {
+        assertEquals("(+ x 3.0)", folded("x + (1 + 2)"));
+        assertEquals("(call f 2.0 ab)", folded("f(1 + 1, \"a\" + \"b\")"));
+    }
+
+    @Test
+    void leavesRuntimeErrorsInPlace() {
+        assertEquals("(/ 1.0 0.0)", folded("1 / 0"));
+        assertEquals("(+ 1.0 nil)", folded("1 + nil"));
+        assertEquals("(+ a true)", folded("\"a\" + true"));
+        assertEquals("(- a)", folded("-\"a\""));
+        assertEquals("(< 1.0 a)", folded("1 < \"a\""));
+    }
+
+    @Test
+    void foldsZeroOverZeroToNaN() {
+        assertEquals("NaN", folded("0 / 0"));
+    }
+
+    @Test
+    void shortCircuitsLiteralLeftOperands() {
+        assertEquals("true", folded("true or x"));
+        assertEquals("x", folded("false or x"));
+        assertEquals("x", folded("true and x"));
+        assertEquals("nil", folded("nil and x"));
+        assertEquals("(or x true)", folded("x or true"));
+    }
+
+    @Test
+    void picksTernaryLegOnLiteralCondition() {
+        assertEquals("a", folded("true ? a : b"));
+        assertEquals("b", folded("nil ? a : b"));
+        assertEquals("(Ternary c a b)", folded("c ? a : b"));
+    }
+
+    @Test
+    void dropsLiteralOperandsOfComma() {
+        assertEquals("(group x)", folded("(1, x)"));
+        assertEquals("(group (, x 1.0))", folded("(x, 1)"));
+    }
+
+    @Test
+    void keepsOnlyTheBranchThatRuns() {
+        List<Stmt> statements = optimize("if (1 > 2) print 1; else print 2; if (false) print 3; if (x) print 4;");
+
+        assertEquals(2, statements.size());
+        Stmt.Print print = (Stmt.Print) statements.get(0);
+        assertEquals("2.0", new AstPrinter().print(print.expression));
+        assertInstanceOf(Stmt.If.class, statements.get(1));
+    }
+
+    @Test
+    void dropsLoopsThatNeverRun() {
+        List<Stmt> statements = optimize("while (1 > 2) print 1; while (nil) {} while (1 < 2) {}");
+
+        assertEquals(1, statements.size());
+        Stmt.While loop = (Stmt.While) statements.get(0);
+        assertEquals("true", new AstPrinter().print(loop.condition));
+        assertEquals("while", loop.keyword.lexeme);
+    }
+
+    @Test
+    void deadBranchInsideLiveBranchBecomesEmptyBlock() {
+        Stmt.If stmt = (Stmt.If) optimize("if (x) if (false) print 1;").get(0);
+
+        assertInstanceOf(Stmt.Block.class, stmt.thenBranch);
+        assertTrue(((Stmt.Block) stmt.thenBranch).statements.isEmpty());
+    }
+
+    @Test
+    void optimizedProgramsPrintAndFailTheSame() {
+        String[] scripts = {
+                "print 1 + 2 * 3; print \"n\" + 4; print 0 / 0; print !nil;",
+                "var x = 1; print x + (2 + 3); print true ? x : 1 / 0;",
+                "print 1;\nprint 2;\nprint 1 / 0;",
+                "print \"a\";\nprint 1 + nil;",
+                "fun f(n) { if (1 < 2) return n * (2 + 2); return 0; } print f(3);",
+                "var i = 0; while (i < 3 and true) { i = i + 1; } print i; while (false) print 9;",
+        };
+        for (String script : scripts) {
+            assertEquals(run(script, false), run(script, true), script);
+        }
+    }
+
+    // The Resolver sees the tree before dead code is dropped, so these fail either way
+    @Test
+    void errorsInDeadCodeAreStillReported() {
+        String[] scripts = {
+                "if (false) return 1; print \"ran\";",
+                "{ if (false) { var a; var a; } } print \"ran\";",
+                "while (false) { return; } print \"ran\";",
+        };
+        for (String script : scripts) {
+            String plain = run(script, false);
+            assertTrue(plain.startsWith("--\n"), plain);
+            assertEquals(plain, run(script, true), script);
+        }
+    }
+
+    // stdout and stderr of the script, concatenated
+    private static String run(String source, boolean optimize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        new LoxEngine(new PrintStream(out, true), new PrintStream(err, true)).optimize(optimize).run(source);
+        return out + "--\n" + err;
+    }
+}
@@ -0,0 +1,382 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/*
+Expression trees and errors of the precedence climbing Parser, checked against
+fixed expectations and against ReferenceParser, the recursive descent chain it
+replaced, over generated expressions.
+ */
+class ParserTest {
+    private static final int RANDOM_EXPRESSIONS = 2000;
+
+    // Tree of "print expression;", or the errors reported if there were any
+    private static String parse(String expression) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        ErrorReporter reporter = new ErrorReporter(new PrintStream(errors, true));
+        List<Token> tokens = new Scanner("print " + expression + ";", reporter).scanTokens();
+        List<Stmt> statements = new Parser(tokens, reporter).parse();
+        if (reporter.hadError()) return errors.toString();
+        return new AstPrinter().print(((Stmt.Print) statements.get(0)).expression);
+    }
+
+    private static String parseWithReference(String expression) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        ErrorReporter reporter = new ErrorReporter(new PrintStream(errors, true));
+        List<Token> tokens = new Scanner("print " + expression + ";", reporter).scanTokens();
+        Expr expr = new ReferenceParser(tokens, reporter).printStatement();
+        if (reporter.hadError()) return errors.toString();
+        return new AstPrinter().print(expr);
+    }
+
+    @Test
+    void bindsByPrecedence() {
+        assertEquals("(+ 1.0 (* 2.0 3.0))", parse("1 + 2 * 3"));
+        assertEquals("(== (< 1.0 2.0) (> 3.0 4.0))", parse("1 < 2 == 3 > 4"));
+        assertEquals("(or a (and b c))", parse("a or b and c"));
+        assertEquals("(== (! (! a)) b)", parse("!!a == b"));
+        assertEquals("(- (call (call a 1.0) 2.0))", parse("-a(1)(2)"));
+        assertEquals("(* (group (+ 1.0 2.0)) 3.0)", parse("(1 + 2) * 3"));
+    }
+
+    @Test
+    void binaryOperatorsAreLeftAssociative() {
+        assertEquals("(- (- 1.0 2.0) 3.0)", parse("1 - 2 - 3"));
+        assertEquals("(/ (/ a b) c)", parse("a / b / c"));
+        assertEquals("(or (or a b) c)", parse("a or b or c"));
+    }
+
+    @Test
+    void assignmentAndTernaryAreRightAssociative() {
+        assertEquals("(= a (= b c))", parse("a = b = c"));
+        assertEquals("(Ternary a b (Ternary c d e))", parse("a ? b : c ? d : e"));
+        assertEquals("(Ternary (or a b) (or c d) e)", parse("a or b ? c or d : e"));
+    }
+
+    @Test
+    void commaIsLowestAndSeparatesArguments() {
+        assertEquals("(, (, a (= b 1.0)) c)", parse("a, b = 1, c"));
+        assertEquals("(call f a (= b 1.0) (group (, c d)))", parse("f(a, b = 1, (c, d))"));
+        assertEquals("(call f)", parse("f()"));
+    }
+
+    @Test
+    void reportsErrors() {
+        assertEquals("[line 1] Error at '+': Missing left-hand operand.\n", parse("+ 1"));
+        assertEquals("[line 1] Error at '=': Invalid assignment target.\n", parse("1 = 2"));
+        assertEquals("[line 1] Error at ';': Expect ':' after conditional expression ?\n", parse("a ? b"));
+        assertEquals("[line 1] Error at ';': Expect ')' after expression.\n", parse("(1"));
+        assertEquals("[line 1] Error at ';': Expect ')' after arguments.\n", parse("f(1"));
+        assertEquals("[line 1] Error at ';': Expect expression.\n", parse("1 +"));
+    }
+
+    @Test
+    void matchesReferenceOnEdgeCases() {
+        String[] cases = {
+                "1", "a", "nil", "\"s\"", "-1 - -1", "!a == !b", "a = b ? c : d", "a ? b = c : d",
+                "a ? b, c : d", "f(a)(b)(c)", "(a)(b)", "a = 1, b = 2", "* 1 + 2", "== a", "< a or b",
+                "/ a * b", "a + = 1", "(a) = 1", "a.b", "f(,)", "a ? b : c = d",
+        };
+        for (String expression : cases) {
+            assertEquals(parseWithReference(expression), parse(expression), expression);
+        }
+    }
+
+    @Test
+    void matchesReferenceOnGeneratedExpressions() {
+        Random random = new Random(14);
+        for (int i = 0; i < RANDOM_EXPRESSIONS; i++) {
+            String expression = i % 4 == 3 ? tokenSoup(random) : expression(random, 4);
+            assertEquals(parseWithReference(expression), parse(expression), expression);
+        }
+    }
+
+    private static final String[] BINARY = {
+            "+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">=", "and", "or", ",",
+    };
+    private static final String[] ATOMS = {"a", "b", "1", "2.5", "\"s\"", "nil", "true", "false"};
+
+    // Well formed expression nested at most depth levels
+    private static String expression(Random random, int depth) {
+        if (depth == 0) return ATOMS[random.nextInt(ATOMS.length)];
+        switch (random.nextInt(8)) {
+            case 0:
+                return (random.nextBoolean() ? "-" : "!") + expression(random, depth - 1);
+            case 1:
+                return "(" + expression(random, depth - 1) + ")";
+            case 2:
+                return "a = " + expression(random, depth - 1);
+            case 3:
+                return expression(random, depth - 1) + " ? " + expression(random, depth - 1)
+                        + " : " + expression(random, depth - 1);
+            case 4: {
+                StringBuilder call = new StringBuilder(random.nextBoolean() ? "f" : "(g)").append("(");
+                int arguments = random.nextInt(3);
+                for (int i = 0; i < arguments; i++) {
+                    if (i > 0) call.append(", ");
+                    call.append(expression(random, depth - 1));
+                }
+                return call.append(")").toString();
+            }
+            default:
+                return expression(random, depth - 1) + " " + BINARY[random.nextInt(BINARY.length)] + " "
+                        + expression(random, depth - 1);
+        }
+    }
+
+    private static final String[] SOUP = {
+            "a", "1", "nil", "+", "-", "*", "/", "!", "==", "<", ">=", "and", "or", "=", "?", ":", ",", "(", ")",
+    };
+
+    // Mostly malformed, exercises the error productions and messages
+    private static String tokenSoup(Random random) {
+        StringBuilder soup = new StringBuilder();
+        int length = 1 + random.nextInt(10);
+        for (int i = 0; i < length; i++) {
+            soup.append(SOUP[random.nextInt(SOUP.length)]).append(' ');
+        }
+        return soup.toString();
+    }
+
+    // Expression grammar as one method per level, the way Parser was written before precedence climbing
+    private static class ReferenceParser {
+        private static class ParseError extends RuntimeException {
+        }
+
+        private final List<Token> tokens;
+        private final ErrorReporter reporter;
+        private int current = 0;
+
+        ReferenceParser(List<Token> tokens, ErrorReporter reporter) {
+            this.tokens = tokens;
+            this.reporter = reporter;
+        }
+
+        // "print" expression ";" , null after an error that stops the statement
+        Expr printStatement() {
+            try {
+                advance();
+                Expr value = expression();
+                consume(TokenType.SEMICOLON, "Expect ';' after value.");
+                return value;
+            } catch (ParseError error) {
+                return null;
+            }
+        }
+
+        private Expr expression() {
+            return comma();
+        }
+
+        private Expr comma() {
+            Expr expr = assignment();
+            while (match(TokenType.COMMA)) {
+                Token operator = previous();
+                Expr right = assignment();
+                expr = new Expr.CommaCollection(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr assignment() {
+            Expr expr = conditional();
+
+            if (match(TokenType.EQUAL)) {
+                Token equals = previous();
+                Expr value = assignment();
+
+                if (expr instanceof Expr.Variable) {
+                    Token name = ((Expr.Variable) expr).name;
+                    return new Expr.Assign(name, value);
+                }
+
+                error(equals, "Invalid assignment target.");
+            }
+
+            return expr;
+        }
+
+        private Expr conditional() {
+            Expr expr = or();
+
+            if (match(TokenType.QUESTION)) {
+                Expr ifBranch = or();
+                consume(TokenType.COLON, "Expect ':' after conditional expression ?");
+                Expr elseBranch = conditional();
+                expr = new Expr.Ternary(expr, ifBranch, elseBranch);
+            }
+
+            return expr;
+        }
+
+        private Expr or() {
+            Expr expr = and();
+            while (match(TokenType.OR)) {
+                Token operator = previous();
+                Expr right = and();
+                expr = new Expr.Logical(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr and() {
+            Expr expr = equality();
+            while (match(TokenType.AND)) {
+                Token operator = previous();
+                Expr right = equality();
+                expr = new Expr.Logical(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr equality() {
+            Expr expr = comparison();
+            while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
+                Token operator = previous();
+                Expr right = comparison();
+                expr = new Expr.Binary(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr comparison() {
+            Expr expr = term();
+            while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
+                Token operator = previous();
+                Expr right = term();
+                expr = new Expr.Binary(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr term() {
+            Expr expr = factor();
+            while (match(TokenType.MINUS, TokenType.PLUS)) {
+                Token operator = previous();
+                Expr right = factor();
+                expr = new Expr.Binary(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr factor() {
+            Expr expr = unary();
+            while (match(TokenType.SLASH, TokenType.STAR)) {
+                Token operator = previous();
+                Expr right = unary();
+                expr = new Expr.Binary(expr, operator, right);
+            }
+            return expr;
+        }
+
+        private Expr unary() {
+            if (match(TokenType.BANG, TokenType.MINUS)) {
+                Token operator = previous();
+                Expr right = unary();
+                return new Expr.Unary(operator, right);
+            }
+            return call();
+        }
+
+        private Expr call() {
+            Expr expr = primary();
+            while (match(TokenType.LEFT_PAREN)) {
+                expr = finishCall(expr);
+            }
+            return expr;
+        }
+
+        private Expr finishCall(Expr callee) {
+            List<Expr> arguments = new ArrayList<>();
+            if (!check(TokenType.RIGHT_PAREN)) {
+                do {
+                    arguments.add(assignment());
+                } while (match(TokenType.COMMA));
+            }
+
+            Token paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
+            return new Expr.Call(callee, paren, arguments);
+        }
+
+        private Expr primary() {
+            if (match(TokenType.FALSE)) return new Expr.Literal(false);
+            if (match(TokenType.TRUE)) return new Expr.Literal(true);
+            if (match(TokenType.NIL)) return new Expr.Literal(null);
+            if (match(TokenType.NUMBER, TokenType.STRING)) return new Expr.Literal(previous().literal);
+            if (match(TokenType.IDENTIFIER)) return new Expr.Variable(previous());
+
+            if (match(TokenType.LEFT_PAREN)) {
+                Expr expr = expression();
+                consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                return new Expr.Grouping(expr);
+            }
+
+            if (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
+                error(previous(), "Missing left-hand operand.");
+                equality();
+                return null;
+            }
+            if (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
+                error(previous(), "Missing left-hand operand.");
+                comparison();
+                return null;
+            }
+            if (match(TokenType.PLUS)) {
+                error(previous(), "Missing left-hand operand.");
+                term();
+                return null;
+            }
+            if (match(TokenType.SLASH, TokenType.STAR)) {
+                error(previous(), "Missing left-hand operand.");
+                factor();
+                return null;
+            }
+
+            throw error(peek(), "Expect expression.");
+        }
+
+        private boolean match(TokenType... types) {
+            for (TokenType type : types) {
+                if (check(type)) {
+                    advance();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Token consume(TokenType type, String message) {
+            if (check(type)) return advance();
+            throw error(peek(), message);
+        }
+
+        private ParseError error(Token token, String message) {
+            reporter.error(token, message);
+            return new ParseError();
+        }
+
+        private boolean check(TokenType type) {
+            return peek().type != TokenType.EOF && peek().type == type;
+        }
+
+        private Token advance() {
+            if (peek().type != TokenType.EOF) current++;
+            return previous();
+        }
+
+        private Token peek() {
+            return tokens.get(current);
+        }
+
+        private Token previous() {
+            return tokens.get(current - 1);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// (depth, slot) bindings, frame sizes and the errors the Resolver reports
+class ResolverTest {
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final ErrorReporter reporter = new ErrorReporter(new PrintStream(errors, true));
+
+    private List<Stmt> resolve(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source, reporter).scanTokens(), reporter).parse();
+        assertEquals("", errors.toString(), "parse errors");
+        new Resolver(reporter).resolve(statements);
+        return statements;
+    }
+
+    private static Expr.Variable printed(Stmt stmt) {
+        return (Expr.Variable) ((Stmt.Print) stmt).expression;
+    }
+
+    @Test
+    void localsTakeSlotsInDeclarationOrder() {
+        Stmt.Block block = (Stmt.Block) resolve("{ var a = 1; var b = 2; print b; print a; }").get(0);
+
+        assertEquals(2, block.frameSize);
+        assertEquals(0, ((Stmt.Var) block.statements.get(0)).slot);
+        assertEquals(1, ((Stmt.Var) block.statements.get(1)).slot);
+        Expr.Variable b = printed(block.statements.get(2));
+        assertEquals(0, b.depth);
+        assertEquals(1, b.slot);
+        Expr.Variable a = printed(block.statements.get(3));
+        assertEquals(0, a.depth);
+        assertEquals(0, a.slot);
+    }
+
+    @Test
+    void depthCountsEnclosingBlocks() {
+        Stmt.Block outer = (Stmt.Block) resolve("{ var a = 1; { var b = 2; { print a; } } }").get(0);
+        Stmt.Block middle = (Stmt.Block) outer.statements.get(1);
+        Stmt.Block inner = (Stmt.Block) middle.statements.get(1);
+
+        Expr.Variable a = printed(inner.statements.get(0));
+        assertEquals(2, a.depth);
+        assertEquals(0, a.slot);
+        assertEquals(0, inner.frameSize);
+    }
+
+    @Test
+    void innerDeclarationShadowsOuter() {
+        Stmt.Block outer = (Stmt.Block) resolve("{ var a = 1; var b = 2; { var b = 3; print b; } }").get(0);
+        Stmt.Block inner = (Stmt.Block) outer.statements.get(2);
+
+        Expr.Variable b = printed(inner.statements.get(1));
+        assertEquals(0, b.depth);
+        assertEquals(0, b.slot);
+    }
+
+    @Test
+    void globalsAreLeftUnresolved() {
+        List<Stmt> statements = resolve("var g = 1; print g; g = 2;");
+
+        assertEquals(-1, ((Stmt.Var) statements.get(0)).slot);
+        assertEquals(-1, printed(statements.get(1)).depth);
+        Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) statements.get(2)).expression;
+        assertEquals(-1, assign.depth);
+    }
+
+    // Numbered densely per program, in order of first use
+    @Test
+    void globalsAreNumberedByName() {
+        List<Stmt> statements = new Parser(new Scanner("print g; g = 2; print h; var h; fun f() { print g; }", reporter)
+                .scanTokens(), reporter).parse();
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        List<Stmt> again = resolve("print h;");
+
+        assertEquals(0, printed(statements.get(0)).global);
+        assertEquals(0, ((Expr.Assign) ((Stmt.Expression) statements.get(1)).expression).global);
+        assertEquals(1, printed(statements.get(2)).global);
+        assertEquals(1, ((Stmt.Var) statements.get(3)).global);
+        Stmt.Function f = (Stmt.Function) statements.get(4);
+        assertEquals(2, f.global);
+        assertEquals(0, printed(f.body.get(0)).global);
+        assertArrayEquals(new String[]{"g", "h", "f"}, resolver.globalNames());
+        assertEquals(0, printed(again.get(0)).global);
+    }
+
+    @Test
+    void localsHaveNoGlobalNumber() {
+        Stmt.Block block = (Stmt.Block) resolve("{ var a = 1; print a; }").get(0);
+
+        assertEquals(-1, ((Stmt.Var) block.statements.get(0)).global);
+        assertEquals(-1, printed(block.statements.get(1)).global);
+    }
+
+    @Test
+    void parametersShareTheBodyFrame() {
+        Stmt.Function function = (Stmt.Function) resolve("fun f(a, b) { var c = a; b = c; }").get(0);
+
+        assertEquals(3, function.frameSize);
+        assertEquals(2, ((Stmt.Var) function.body.get(0)).slot);
+        Expr.Variable a = (Expr.Variable) ((Stmt.Var) function.body.get(0)).initializer;
+        assertEquals(0, a.depth);
+        assertEquals(0, a.slot);
+        Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) function.body.get(1)).expression;
+        assertEquals(0, assign.depth);
+        assertEquals(1, assign.slot);
+    }
+
+    @Test
+    void closuresReachEnclosingFunctionFrames() {
+        Stmt.Function outer = (Stmt.Function) resolve("fun outer(x) { fun inner() { print x; } }").get(0);
+        Stmt.Function inner = (Stmt.Function) outer.body.get(0);
+
+        assertEquals(1, inner.slot);
+        Expr.Variable x = printed(inner.body.get(0));
+        assertEquals(1, x.depth);
+        assertEquals(0, x.slot);
+    }
+
+    @Test
+    void marksReturnedCallsAsTailCalls() {
+        Stmt.Function function = (Stmt.Function) resolve("fun f(n) { return f(n); return 1 + f(n); }").get(0);
+
+        assertTrue(((Stmt.Return) function.body.get(0)).tailCall);
+        assertFalse(((Stmt.Return) function.body.get(1)).tailCall);
+    }
+
+    @Test
+    void reportsRedeclaredLocal() {
+        resolve("{\n  var a = 1;\n  var a = 2;\n}");
+
+        assertEquals("[line 3] Error at 'a': Already a variable with this name in this scope.\n", errors.toString());
+    }
+
+    @Test
+    void allowsRedeclaredGlobal() {
+        resolve("var a = 1; var a = 2;");
+
+        assertFalse(reporter.hadError());
+    }
+
+    @Test
+    void reportsReadInOwnInitializer() {
+        resolve("var a = 1; { var a = a; }");
+
+        assertEquals("[line 1] Error at 'a': Can't read local variable in its own initializer.\n", errors.toString());
+    }
+
+    @Test
+    void reportsTopLevelReturn() {
+        resolve("return 1;");
+
+        assertEquals("[line 1] Error at 'return': Can't return from top-level code.\n", errors.toString());
+        assertEquals(1, reporter.errors);
+    }
+}
@@ -0,0 +1,62 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+// Scanning a file as a stream of bytes, the way Lox runs a script without --cache
+class ScannerTest {
+    private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    private final ErrorReporter reporter = new ErrorReporter(new PrintStream(errors, true));
+
+    private List<Token> scan(byte[] bytes) {
+        return new Scanner(Channels.newChannel(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8, reporter)
+                .scanTokens();
+    }
+
+    // 0xe9 is "é" in Latin-1 but not valid UTF-8 on its own
+    @Test
+    void replacesBytesInvalidInTheCharset() {
+        List<Token> tokens = scan(new byte[]{'p', 'r', 'i', 'n', 't', ' ', '"', 'c', 'a', 'f', (byte) 0xe9, '"', ';'});
+
+        assertEquals("caf\uFFFD", tokens.get(1).literal);
+        assertEquals(TokenType.SEMICOLON, tokens.get(2).type);
+        assertEquals("", errors.toString());
+    }
+
+    @Test
+    void scriptWithInvalidBytesRuns() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LoxEngine engine = new LoxEngine(new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(errors, true));
+        byte[] script = {'p', 'r', 'i', 'n', 't', ' ', '"', (byte) 0xff, 'x', '"', ';'};
+        Program program = engine.compile(new Parser(new Scanner(Channels.newChannel(new ByteArrayInputStream(script)),
+                StandardCharsets.UTF_8, engine.reporter), engine.reporter));
+
+        assertEquals(true, engine.run(program));
+        assertEquals("\uFFFDx\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    // The Parser checks the same two tokens over and over, they are built once each
+    @Test
+    void compactTokensAreBuiltOncePerPosition() {
+        TokenBuffer tokens = new Scanner("var a = a;", reporter).scanCompact();
+        Token var = tokens.peek();
+        assertSame(var, tokens.peek());
+
+        tokens.advance();
+        Token name = tokens.peek();
+        assertSame(var, tokens.previous());
+        assertEquals("a", name.lexeme);
+
+        tokens.advance();
+        tokens.advance();
+        assertSame(name.lexeme, tokens.peek().lexeme);
+    }
+}
@@ -0,0 +1,227 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Round trips, entries that must be treated as misses, and LRU eviction
+class ScriptCacheTest {
+    private static final int PAYLOAD_START = 12; // magic, version, payload length
+
+    @TempDir
+    Path directory;
+
+    private static Program compile(String source) {
+        Program program = new LoxEngine().compile(source);
+        assertNotNull(program);
+        return program;
+    }
+
+    private static byte[] serialize(Program program) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AstSerializer.write(new DataOutputStream(bytes), program);
+        return bytes.toByteArray();
+    }
+
+    private String key(ScriptCache cache, String source) {
+        return cache.key(source.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, false);
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key + ".loxc");
+    }
+
+    private String store(ScriptCache cache, String source) {
+        String key = key(cache, source);
+        cache.store(key, compile(source));
+        assertTrue(Files.exists(entry(key)));
+        return key;
+    }
+
+    @Test
+    void loadsWhatWasStored() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        String source = "fun f(n) { var x = n; { var y = x; return y + 1; } } var g = f(1); print g > 0 ? \"yes\" : h;";
+        String key = store(cache, source);
+
+        Program loaded = cache.load(key);
+        assertNotNull(loaded);
+        assertArrayEquals(new String[]{"f", "g", "h"}, loaded.globalNames);
+        assertArrayEquals(serialize(compile(source)), serialize(loaded));
+    }
+
+    @Test
+    void missesUnknownKey() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+
+        assertNull(cache.load(key(cache, "print 1;")));
+    }
+
+    @Test
+    void keyDependsOnSourceCharsetAndOptions() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        byte[] source = "print 1;".getBytes(StandardCharsets.UTF_8);
+
+        String key = cache.key(source, StandardCharsets.UTF_8, false);
+        assertEquals(key, cache.key(source.clone(), StandardCharsets.UTF_8, false));
+        assertNotEquals(key, cache.key("print 2;".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, false));
+        assertNotEquals(key, cache.key(source, StandardCharsets.ISO_8859_1, false));
+        assertNotEquals(key, cache.key(source, StandardCharsets.UTF_8, true));
+    }
+
+    @Test
+    void corruptEntryIsAMissAndDeleted() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        String key = store(cache, "print \"some payload\";");
+
+        byte[] bytes = Files.readAllBytes(entry(key));
+        bytes[PAYLOAD_START + 2] ^= 0x55;
+        Files.write(entry(key), bytes);
+
+        assertNull(cache.load(key));
+        assertFalse(Files.exists(entry(key)));
+    }
+
+    @Test
+    void truncatedEntryIsAMissAndDeleted() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        String key = store(cache, "print 1 + 2;");
+
+        byte[] bytes = Files.readAllBytes(entry(key));
+        for (int length : new int[]{bytes.length - 1, PAYLOAD_START + 1, 3, 0}) {
+            Files.write(entry(key), Arrays.copyOf(bytes, length));
+            assertNull(cache.load(key), "truncated to " + length);
+            assertFalse(Files.exists(entry(key)));
+        }
+    }
+
+    @Test
+    void otherFormatVersionIsAMiss() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        String key = store(cache, "print 1;");
+
+        byte[] bytes = Files.readAllBytes(entry(key));
+        ByteBuffer.wrap(bytes).putInt(4, ScriptCache.FORMAT_VERSION + 1);
+        Files.write(entry(key), bytes);
+
+        assertNull(cache.load(key));
+        assertFalse(Files.exists(entry(key)));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() throws IOException {
+        // Same size entries, the limit holds two of them
+        String first = store(new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES), "print 1;");
+        long size = Files.size(entry(first));
+        ScriptCache cache = new ScriptCache(directory, 2 * size + size / 2);
+
+
+        String second = store(cache, "print 2;");
+        Files.setLastModifiedTime(entry(first), FileTime.fromMillis(1_000_000));
+        Files.setLastModifiedTime(entry(second), FileTime.fromMillis(2_000_000));
+        // A hit makes first the most recently used
+        assertNotNull(cache.load(first));
+
+        String third = store(cache, "print 3;");
+        assertTrue(Files.exists(entry(first)));
+        assertFalse(Files.exists(entry(second)));
+        assertTrue(Files.exists(entry(third)));
+    }
+
+    // (((...nil...))) inside "print", nested depth times
+    private static Program nested(int depth) {
+        Expr expr = new Expr.Literal(null);
+        for (int i = 0; i < depth; i++) {
+            expr = new Expr.Grouping(expr);
+        }
+        List<Stmt> statements = new ArrayList<>();
+        statements.add(new Stmt.Print(expr));
+        return new Program(statements, new String[0]);
+    }
+
+    @Test
+    void treeTooDeepToWriteIsNotCached() throws IOException {
+        ScriptCache cache = new ScriptCache(directory, ScriptCache.DEFAULT_MAX_BYTES);
+        String key = key(cache, "deep");
+
+        cache.store(key, nested(1_000_000));
+
+        assertFalse(Files.exists(entry(key)));
+        assertNull(cache.load(key));
+    }
+
+    @Test
+    void treeTooDeepToReadFailsAsIOException() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int depth = 1_000_000;
+        out.writeInt(1); // statements
+        out.writeByte(6); // PRINT
+        for (int i = 0; i < depth; i++) {
+            out.writeByte(5); // GROUPING
+        }
+        out.writeByte(6); // LITERAL
+        out.writeByte(0); // nil
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> AstSerializer.read(in));
+    }
+
+    @Test
+    void globalNumberOutsideTheNameTableFailsAsIOException() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1); // statements
+        out.writeByte(6); // PRINT
+        out.writeByte(9); // VARIABLE
+        out.writeByte(TokenType.IDENTIFIER.ordinal());
+        out.writeInt(1);
+        out.writeByte('g');
+        out.writeByte(0); // nil literal
+        out.writeInt(1); // line
+        out.writeInt(-1); // depth
+        out.writeInt(0); // slot
+        out.writeInt(1); // global
+        out.writeInt(1); // names
+        out.writeInt(1);
+        out.writeByte('g');
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> AstSerializer.read(in));
+    }
+
+    @Test
+    void corruptStringLengthFailsAsIOException() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1); // statements
+        out.writeByte(6); // PRINT
+        out.writeByte(6); // LITERAL
+        out.writeByte(4); // string value
+        out.writeInt(Integer.MAX_VALUE - 8);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> AstSerializer.read(in));
+    }
+}
@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.jupiter.api.Test;
+
+// The VM prints and fails like the tree-walker, closures and the fused instructions included
+class VmTest {
+    private static void assertSameAsInterpreter(String... scripts) {
+        for (String script : scripts) {
+            assertEquals(run(script, false), run(script, true), script);
+        }
+    }
+
+    // stdout and stderr of the script, concatenated
+    private static String run(String source, boolean useVm) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        new LoxEngine(new PrintStream(out, true), new PrintStream(err, true)).useVm(useVm).run(source);
+        return out + "--\n" + err;
+    }
+
+    @Test
+    void closuresShareCapturedLocals() {
+        assertSameAsInterpreter(
+                "fun counter() { var n = 0; fun inc() { n = n + 1; return n; } return inc; }"
+                        + " var c = counter(); c(); print c(); print counter()();",
+                "fun outer() { var x = \"a\"; fun mid() { fun inner() { return x; } return inner; }"
+                        + " x = \"b\"; return mid()(); } print outer();",
+                "var f; { var i = 0; while (i < 3) { var j = i; fun g() { return j; }"
+                        + " if (i == 1) f = g; i = i + 1; } } print f();");
+    }
+
+    @Test
+    void breakLeavesNestedBlocks() {
+        assertSameAsInterpreter(
+                "var k = 0; while (true) { var a = k; { var b = a; if (b > 3) break; } k = k + 1; } print k;",
+                "fun f() { var s = 0; for (var i = 0; i < 10; i = i + 1) { var t = i; if (t == 5) break;"
+                        + " s = s + t; } return s; } print f();");
+    }
+
+    @Test
+    void fusedInstructionsKeepSemantics() {
+        assertSameAsInterpreter(
+                "{ var a = \"x\"; var b = 2; print a + b; print b + a; print b / 4; print b >= 2; }",
+                "{ var z = 0; var n = z / z; if (n < 1) print 1; else print 2; while (n < 1) print 3; }",
+                "{ var a = 1; var b = 0;\nprint a\n/ b; }",
+                "{ var a = 1; var b;\nif (a <\nb) print 1; }",
+                "{ var a = \"s\"; var b = 1; print a < b; }",
+                "{ var i = 0; while (i < 5) i = i + 1; print i; }");
+    }
+
+    // Calls do not recurse in Java, so depth depends on VM.MAX_FRAMES and not on the thread's stack
+    @Test
+    void deepRecursionRuns() {
+        assertEquals("100000\n--\n", run("fun r(n) { if (n == 0) return 0; return 1 + r(n - 1); } print r(100000);", true));
+    }
+
+    @Test
+    void unboundedRecursionIsAStackOverflow() {
+        String script = "fun f(n) {\n  return f(n + 1) + 1;\n}\nprint f(0);";
+
+        assertEquals("--\nStack overflow.\n[line 2]\n", run(script, true));
+        assertSameAsInterpreter(script);
+    }
+}